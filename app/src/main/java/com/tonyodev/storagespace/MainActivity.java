@@ -3,15 +3,28 @@ package com.tonyodev.storagespace;
 import android.os.Bundle;
 import android.support.v4.content.ContextCompat;
 import android.support.v7.app.AppCompatActivity;
+import android.support.annotation.NonNull;
 import android.view.View;
 
+import com.tonyodev.storagegrapher.ScanCallback;
+import com.tonyodev.storagegrapher.ScanHandle;
+import com.tonyodev.storagegrapher.ScanResult;
 import com.tonyodev.storagegrapher.Storage;
 import com.tonyodev.storagegrapher.StorageGraphBar;
 import com.tonyodev.storagegrapher.StorageVolume;
 import com.tonyodev.storagegrapher.widget.StorageGraphView;
 
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
 public class MainActivity extends AppCompatActivity {
 
+    private final ExecutorService scanExecutor = Executors.newSingleThreadExecutor();
+    private final List<ScanHandle> scanHandles = new ArrayList<>();
+
     private StorageGraphView internalStorageGraphView;
     private StorageGraphView sdCardStorageGraphView;
 
@@ -21,18 +34,98 @@ public class MainActivity extends AppCompatActivity {
         setContentView(R.layout.activity_main);
         internalStorageGraphView = (StorageGraphView) findViewById(R.id.storageView);
         sdCardStorageGraphView = (StorageGraphView) findViewById(R.id.sdCardStorageView);
-        setStorageGraphView();
-        setSdCardStorageGraphView();
+
+        //Both graphs are on the same screen so they recycle views through one pool
+        sdCardStorageGraphView.setViewPool(internalStorageGraphView.getViewPool());
+        loadStorageGraphView();
+        loadSdCardStorageGraphView();
+    }
+
+    @Override
+    protected void onDestroy() {
+        super.onDestroy();
+
+        for (ScanHandle scanHandle : scanHandles) {
+            scanHandle.cancel();
+        }
+
+        scanExecutor.shutdown();
     }
 
-    private void setStorageGraphView() {
+    //Directory sizes are scanned off the main thread. The App is located on the internal storage
+    private void loadStorageGraphView() {
+
+        final File primaryAppFilesDir = Storage.getPrimaryAppFilesDir(this);
+
+        scanHandles.add(Storage.scanDirectoryAsync(Storage.getAppDir(this), scanExecutor, new ScanCallback() {
+            @Override
+            public void onProgress(long bytes, long entries) {
+            }
+
+            @Override
+            public void onComplete(@NonNull final ScanResult appDirResult) {
+
+                if(primaryAppFilesDir == null) {
+                    setStorageGraphView(appDirResult.getBytes());
+                    return;
+                }
+
+                scanHandles.add(Storage.scanDirectoryAsync(primaryAppFilesDir, scanExecutor, new ScanCallback() {
+                    @Override
+                    public void onProgress(long bytes, long entries) {
+                    }
+
+                    @Override
+                    public void onComplete(@NonNull ScanResult appFilesDirResult) {
+                        setStorageGraphView(appDirResult.getBytes() + appFilesDirResult.getBytes());
+                    }
+
+                    @Override
+                    public void onError(@NonNull Throwable throwable) {
+                        setStorageGraphView(appDirResult.getBytes());
+                    }
+                }));
+            }
+
+            @Override
+            public void onError(@NonNull Throwable throwable) {
+                setStorageGraphView(0);
+            }
+        }));
+    }
+
+    private void loadSdCardStorageGraphView() {
+
+        File secondaryAppFilesDir = Storage.getSecondaryAppFilesDir(this);
+
+        if(secondaryAppFilesDir == null) {
+            setSdCardStorageGraphView(0);
+            return;
+        }
+
+        scanHandles.add(Storage.scanDirectoryAsync(secondaryAppFilesDir, scanExecutor, new ScanCallback() {
+            @Override
+            public void onProgress(long bytes, long entries) {
+            }
+
+            @Override
+            public void onComplete(@NonNull ScanResult result) {
+                setSdCardStorageGraphView(result.getBytes());
+            }
+
+            @Override
+            public void onError(@NonNull Throwable throwable) {
+                setSdCardStorageGraphView(0);
+            }
+        }));
+    }
+
+    private void setStorageGraphView(long appSize) {
 
         StorageVolume storageVolume = Storage.getPrimaryStorageVolume();
 
         if(storageVolume != null) {
 
-            long appSize = Storage.getAppDirBytes(this) + Storage.getPrimaryAppFilesDirBytes(this);  //Get app size. The App is located on the internal storage
-
             StorageGraphBar appBar = new StorageGraphBar(
                     Storage.getStoragePercentage(appSize,storageVolume.getTotalSpace()),
                     ContextCompat.getColor(this,R.color.orange),
@@ -54,21 +147,19 @@ public class MainActivity extends AppCompatActivity {
                     Storage.getFormattedStorageAmount(this,storageVolume.getFreeSpace())
             );
 
-            internalStorageGraphView.addBars(usedBar,appBar,freeBar);
+            internalStorageGraphView.setBars(usedBar,appBar,freeBar);
             internalStorageGraphView.setVisibility(View.VISIBLE);
         }else {
             internalStorageGraphView.setVisibility(View.GONE);
         }
     }
 
-    private void setSdCardStorageGraphView() {
+    private void setSdCardStorageGraphView(long appSize) {
 
         StorageVolume storageVolume = Storage.getSecondaryStorageVolume(this);
 
         if(storageVolume != null) {
 
-            long appSize = Storage.getSecondaryAppFilesDirBytes(this);
-
             StorageGraphBar appBar = new StorageGraphBar(
                     Storage.getStoragePercentage(appSize,storageVolume.getTotalSpace()),
                     ContextCompat.getColor(this,R.color.orange),
@@ -90,7 +181,7 @@ public class MainActivity extends AppCompatActivity {
                     Storage.getFormattedStorageAmount(this,storageVolume.getFreeSpace())
             );
 
-            sdCardStorageGraphView.addBars(usedBar,appBar,freeBar);
+            sdCardStorageGraphView.setBars(usedBar,appBar,freeBar);
             sdCardStorageGraphView.setVisibility(View.VISIBLE);
         }else {
             sdCardStorageGraphView.setVisibility(View.GONE);
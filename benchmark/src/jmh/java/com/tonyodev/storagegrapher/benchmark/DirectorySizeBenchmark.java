@@ -0,0 +1,122 @@
+package com.tonyodev.storagegrapher.benchmark;
+
+import com.tonyodev.storagegrapher.DirectoryReport;
+import com.tonyodev.storagegrapher.DirectorySizeEstimator;
+import com.tonyodev.storagegrapher.DirectorySizeIndex;
+import com.tonyodev.storagegrapher.ScanResult;
+import com.tonyodev.storagegrapher.Storage;
+
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks the directory scanning engines against synthetic trees.
+ * Throughput and sampled latency percentiles are reported per scan.
+ * The gc profiler reports gc.alloc.rate.norm per scan; divide it by the
+ * entries aux counter to get the allocation per entry. The parallel scan
+ * runs for every worker count of {@link Workers}; compare it with the
+ * serial scan on a machine with at least that many cores.
+ *
+ * Run with ./gradlew :benchmark:jmh
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class DirectorySizeBenchmark {
+
+    @Param({"3"})
+    public int depth;
+
+    @Param({"4", "16"})
+    public int fanOut;
+
+    @Param({"32"})
+    public int filesPerDirectory;
+
+    @Param({"4096"})
+    public long fileSize;
+
+    private SyntheticTree tree;
+    private File indexFile;
+    private DirectorySizeIndex index;
+
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.EVENTS)
+    public static class Entries {
+
+        public long entries;
+    }
+
+    @State(Scope.Benchmark)
+    public static class Workers {
+
+        @Param({"2", "4", "8"})
+        public int parallelism;
+    }
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        tree = SyntheticTree.create(depth, fanOut, filesPerDirectory, fileSize);
+        indexFile = File.createTempFile("storage-benchmark", ".index");
+
+        //The index starts empty instead of reading the empty temp file
+        indexFile.delete();
+        index = new DirectorySizeIndex(indexFile);
+        index.getDirectorySize(tree.getRoot());
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        tree.delete();
+        indexFile.delete();
+    }
+
+    @Benchmark
+    public long getDirectorySize(Entries counter) {
+        counter.entries += tree.getEntries();
+        return Storage.getDirectorySize(tree.getRoot());
+    }
+
+    @Benchmark
+    public long getDirectorySizeParallel(Entries counter, Workers workers) {
+        counter.entries += tree.getEntries();
+        return Storage.getDirectorySize(tree.getRoot(), workers.parallelism);
+    }
+
+    @Benchmark
+    public ScanResult scanDirectoryGuarded(Entries counter) {
+        counter.entries += tree.getEntries();
+        return Storage.scanDirectory(tree.getRoot(),
+                Storage.SCAN_SAME_FILE_SYSTEM | Storage.SCAN_DEDUPLICATE_HARD_LINKS);
+    }
+
+    @Benchmark
+    public DirectoryReport analyzeDirectory(Entries counter) {
+        counter.entries += tree.getEntries();
+        return Storage.analyzeDirectory(tree.getRoot(), 10);
+    }
+
+    @Benchmark
+    public long indexedRescan(Entries counter) {
+        counter.entries += tree.getEntries();
+        return index.getDirectorySize(tree.getRoot());
+    }
+
+    @Benchmark
+    public long estimateByEntries() {
+        return new DirectorySizeEstimator(tree.getRoot()).refineByEntries(1000).getBytes();
+    }
+}
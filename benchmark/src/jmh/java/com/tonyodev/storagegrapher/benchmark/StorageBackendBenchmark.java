@@ -0,0 +1,120 @@
+package com.tonyodev.storagegrapher.benchmark;
+
+import com.tonyodev.storagegrapher.InMemoryStorageBackend;
+import com.tonyodev.storagegrapher.Storage;
+import com.tonyodev.storagegrapher.StorageBackend;
+import com.tonyodev.storagegrapher.StorageVolume;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.io.File;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks the volume statistics of the platform backend and the
+ * scanning engine against large in memory trees, which measures the
+ * engine itself without disk or kernel costs.
+ *
+ * Run with ./gradlew :benchmark:jmh
+ */
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class StorageBackendBenchmark {
+
+    private static final String ROOT = "/synthetic";
+
+    /**
+     * Platform backend set once per trial, so each op only measures the statfs
+     * */
+    @State(Scope.Benchmark)
+    public static class JvmVolume {
+
+        String volumePath;
+
+        @Setup(Level.Trial)
+        public void setUp() {
+            StorageBackend.setDefault(null);
+            volumePath = System.getProperty("java.io.tmpdir");
+
+            //Creates the default backend before measuring
+            Storage.getStorageVolume(volumePath);
+        }
+    }
+
+    /**
+     * In memory tree set as the default backend for the whole trial
+     * */
+    @State(Scope.Benchmark)
+    public static class InMemoryTree {
+
+        @Param({"4"})
+        public int depth;
+
+        @Param({"10"})
+        public int fanOut;
+
+        @Param({"32"})
+        public int filesPerDirectory;
+
+        InMemoryStorageBackend backend;
+        File root;
+        int parallelism;
+
+        @Setup(Level.Trial)
+        public void setUp() {
+            backend = new InMemoryStorageBackend();
+            backend.setVolume(ROOT, Long.MAX_VALUE / 2, Long.MAX_VALUE / 4);
+            populate(ROOT, depth);
+            root = new File(ROOT);
+            parallelism = Runtime.getRuntime().availableProcessors();
+            StorageBackend.setDefault(backend);
+        }
+
+        @TearDown(Level.Trial)
+        public void tearDown() {
+            StorageBackend.setDefault(null);
+        }
+
+        private void populate(String directory, int level) {
+
+            backend.addDirectory(directory);
+
+            for (int i = 0; i < filesPerDirectory; i++) {
+                backend.addFile(directory + File.separatorChar + "file" + i + ".bin", 4096);
+            }
+
+            if(level == 0) {
+                return;
+            }
+
+            for (int i = 0; i < fanOut; i++) {
+                populate(directory + File.separatorChar + "dir" + i, level - 1);
+            }
+        }
+    }
+
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.MICROSECONDS)
+    public StorageVolume getStorageVolume(JvmVolume volume) {
+        return Storage.getStorageVolume(volume.volumePath);
+    }
+
+    @Benchmark
+    public long getDirectorySizeInMemory(InMemoryTree tree) {
+        return Storage.getDirectorySize(tree.root);
+    }
+
+    @Benchmark
+    public long getDirectorySizeInMemoryParallel(InMemoryTree tree) {
+        return Storage.getDirectorySize(tree.root, tree.parallelism);
+    }
+}
@@ -0,0 +1,112 @@
+package com.tonyodev.storagegrapher.benchmark;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+
+/**
+ * Builds synthetic directory trees used by the benchmarks. Files are
+ * created sparse so large trees are quick to build and use little disk.
+ */
+final class SyntheticTree {
+
+    private final File root;
+    private final long entries;
+    private final long bytes;
+
+    private SyntheticTree(File root, long entries, long bytes) {
+        this.root = root;
+        this.entries = entries;
+        this.bytes = bytes;
+    }
+
+    /**
+     * @param depth number of directory levels below the root
+     * @param fanOut number of sub directories per directory
+     * @param filesPerDirectory number of files per directory
+     * @param fileSize size of every file in bytes
+     * */
+    static SyntheticTree create(int depth, int fanOut, int filesPerDirectory, long fileSize) throws IOException {
+
+        File root = File.createTempFile("storage-benchmark", "");
+
+        if(!root.delete() || !root.mkdirs()) {
+            throw new IOException("Cannot create " + root);
+        }
+
+        long[] counters = new long[2];
+        populate(root, depth, fanOut, filesPerDirectory, fileSize, counters);
+
+        return new SyntheticTree(root, counters[0], counters[1]);
+    }
+
+    private static void populate(File directory, int depth, int fanOut, int filesPerDirectory,
+                                 long fileSize, long[] counters) throws IOException {
+
+        for (int i = 0; i < filesPerDirectory; i++) {
+
+            RandomAccessFile file = new RandomAccessFile(new File(directory, "file" + i + ".bin"), "rw");
+
+            try {
+                file.setLength(fileSize);
+            } finally {
+                file.close();
+            }
+
+            counters[0]++;
+            counters[1] += fileSize;
+        }
+
+        if(depth == 0) {
+            return;
+        }
+
+        for (int i = 0; i < fanOut; i++) {
+
+            File subDirectory = new File(directory, "dir" + i);
+
+            if(!subDirectory.mkdir()) {
+                throw new IOException("Cannot create " + subDirectory);
+            }
+
+            counters[0]++;
+            populate(subDirectory, depth - 1, fanOut, filesPerDirectory, fileSize, counters);
+        }
+    }
+
+    File getRoot() {
+        return root;
+    }
+
+    /**
+     * @return number of files and directories below the root
+     * */
+    long getEntries() {
+        return entries;
+    }
+
+    /**
+     * @return total size of the files in the tree
+     * */
+    long getBytes() {
+        return bytes;
+    }
+
+    void delete() {
+        delete(root);
+    }
+
+    private static void delete(File file) {
+
+        File[] subFiles = file.listFiles();
+
+        if(subFiles != null) {
+
+            for (File subFile : subFiles) {
+                delete(subFile);
+            }
+        }
+
+        file.delete();
+    }
+}
@@ -0,0 +1,178 @@
+package com.tonyodev.storagegrapher;
+
+import android.os.Build;
+import android.os.StatFs;
+import android.support.annotation.NonNull;
+import android.system.ErrnoException;
+import android.system.Os;
+import android.system.OsConstants;
+import android.system.StructStat;
+
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * Backend used on devices. On Lollipop and above the type, size and
+ * identity of an entry are read with a single lstat call, or stat call
+ * when links are followed. Older devices fall back to the File api which
+ * needs two calls per file entry. Directories are streamed on Oreo and
+ * above and listed with File.list() below. Volumes are read with StatFs.
+ *
+ * Note: The File api always follows links. Below Lollipop a link to a
+ * directory is detected by comparing canonical paths and reported as a
+ * link, but a link to a file is measured as the file it points to.
+ */
+public final class AndroidStorageBackend extends StorageBackend {
+
+    @Override
+    protected boolean readEntry(@NonNull String path, @NonNull EntryStat stat) {
+
+        if(Build.VERSION.SDK_INT >= Build.VERSION_CODES.LOLLIPOP) {
+            return readStat(path, stat);
+        }
+
+        return readFile(path, stat);
+    }
+
+    @Override
+    protected DirectoryEntries openDirectory(@NonNull String directory) {
+
+        if(Build.VERSION.SDK_INT >= Build.VERSION_CODES.O) {
+            return DirectoryEntries.StreamEntries.open(directory);
+        }
+
+        String[] names = new File(directory).list();
+
+        if(names == null) {
+            return null;
+        }
+
+        return new DirectoryEntries.ArrayEntries(names);
+    }
+
+    @Override
+    protected boolean readVolume(@NonNull String path, @NonNull VolumeStat stat) {
+
+        StatFs statFs = path.equals(stat.handlePath) ? (StatFs) stat.handle : null;
+
+        try {
+
+            if(statFs == null) {
+                statFs = new StatFs(path);
+            }else {
+                statFs.restat(path);
+            }
+        } catch (IllegalArgumentException e) {
+            //Volume is not mounted
+            return false;
+        }
+
+        long blockSize;
+        long availableBlocks;
+        long totalBlocks;
+
+        if(Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN_MR2) {
+            blockSize = statFs.getBlockSizeLong();
+            availableBlocks = statFs.getAvailableBlocksLong();
+            totalBlocks = statFs.getBlockCountLong();
+        }else {
+            blockSize = (long) statFs.getBlockSize();
+            availableBlocks = (long) statFs.getAvailableBlocks();
+            totalBlocks = (long) statFs.getBlockCount();
+        }
+
+        stat.handle = statFs;
+        stat.handlePath = path;
+        stat.freeBytes = availableBlocks * blockSize;
+        stat.totalBytes = totalBlocks * blockSize;
+        return true;
+    }
+
+    private static boolean readStat(String path, EntryStat stat) {
+
+        stat.statCalls++;
+
+        try {
+            StructStat structStat = stat.followLinks ? Os.stat(path) : Os.lstat(path);
+
+            if(OsConstants.S_ISDIR(structStat.st_mode)) {
+                stat.type = EntryStat.TYPE_DIRECTORY;
+            }else if(OsConstants.S_ISREG(structStat.st_mode)) {
+                stat.type = EntryStat.TYPE_FILE;
+            }else if(OsConstants.S_ISLNK(structStat.st_mode)) {
+                stat.type = EntryStat.TYPE_SYMLINK;
+            }else {
+                stat.type = EntryStat.TYPE_OTHER;
+            }
+
+            stat.size = structStat.st_size;
+            stat.device = structStat.st_dev;
+            stat.inode = structStat.st_ino;
+            stat.links = structStat.st_nlink;
+            stat.lastModified = structStat.st_mtime * 1000L;
+            return true;
+        } catch (ErrnoException e) {
+            stat.clear();
+            return false;
+        }
+    }
+
+    private static boolean readFile(String path, EntryStat stat) {
+
+        File file = new File(path);
+        stat.statCalls += 2;
+        stat.size = file.length();
+        stat.device = 0;
+        stat.inode = 0;
+        stat.links = 1;
+
+        if(file.isDirectory()) {
+
+            stat.lastModified = file.lastModified();
+            stat.statCalls++;
+
+            if(!stat.followLinks && isSymbolicLink(file)) {
+                stat.type = EntryStat.TYPE_SYMLINK;
+                stat.size = 0;
+                stat.statCalls += 2;
+                return true;
+            }
+
+            stat.type = EntryStat.TYPE_DIRECTORY;
+            return true;
+        }
+
+        //length returns 0 for missing entries. Only then an exists call is needed
+        if(stat.size == 0) {
+
+            stat.statCalls++;
+
+            if(!file.exists()) {
+                stat.clear();
+                return false;
+            }
+        }
+
+        stat.type = EntryStat.TYPE_FILE;
+        stat.lastModified = 0;
+        return true;
+    }
+
+    //A directory reached through a link resolves to a different canonical path
+    //than its canonical parent joined with its name
+    private static boolean isSymbolicLink(File file) {
+
+        File parent = file.getParentFile();
+
+        if(parent == null) {
+            return false;
+        }
+
+        try {
+            File unresolved = new File(parent.getCanonicalFile(), file.getName());
+            return !unresolved.getCanonicalFile().equals(unresolved);
+        } catch (IOException e) {
+            return false;
+        }
+    }
+}
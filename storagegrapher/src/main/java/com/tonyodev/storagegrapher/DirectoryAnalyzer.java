@@ -0,0 +1,134 @@
+package com.tonyodev.storagegrapher;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.PriorityQueue;
+
+/**
+ * Collects the largest files, largest directories and the size per
+ * extension while a directory is scanned. Entries are kept in bounded
+ * min heaps so memory stays proportional to the number of entries
+ * requested and not to the size of the tree. The heaps start small and
+ * only grow while entries are found, so a large count does not allocate
+ * up front.
+ *
+ * Directory sizes include everything below the directory, so a large
+ * file also counts toward each of its ancestors and those ancestors tend
+ * to fill the largest directories.
+ */
+final class DirectoryAnalyzer implements DirectoryWalker.Visitor {
+
+    private static final Comparator<StorageEntry> SMALLEST_FIRST = new Comparator<StorageEntry>() {
+        @Override
+        public int compare(StorageEntry lhs, StorageEntry rhs) {
+            return lhs.getBytes() < rhs.getBytes() ? -1 : (lhs.getBytes() == rhs.getBytes() ? 0 : 1);
+        }
+    };
+
+    private static final int INITIAL_CAPACITY = 16;
+
+    private final int count;
+    private final String rootPath;
+    private final PriorityQueue<StorageEntry> largestFiles;
+    private final PriorityQueue<StorageEntry> largestDirectories;
+    private final Map<String, long[]> extensionBytes = new HashMap<>();
+
+    private DirectoryAnalyzer(String rootPath, int count) {
+        this.rootPath = rootPath;
+        this.count = count;
+        //Capped so count + 1 cannot overflow and a large count is not preallocated
+        int capacity = Math.max(1, Math.min(count, INITIAL_CAPACITY));
+        this.largestFiles = new PriorityQueue<>(capacity, SMALLEST_FIRST);
+        this.largestDirectories = new PriorityQueue<>(capacity, SMALLEST_FIRST);
+    }
+
+    static DirectoryReport analyze(File root, int count) {
+
+        DirectoryAnalyzer analyzer = new DirectoryAnalyzer(root.getAbsolutePath(), count);
+        ScanResult scanResult = DirectoryScanner.scan(root, null, analyzer);
+
+        Map<String, Long> extensions = new HashMap<>(analyzer.extensionBytes.size());
+
+        for (Map.Entry<String, long[]> entry : analyzer.extensionBytes.entrySet()) {
+            extensions.put(entry.getKey(), entry.getValue()[0]);
+        }
+
+        return new DirectoryReport(scanResult,
+                toSortedList(analyzer.largestFiles),
+                toSortedList(analyzer.largestDirectories),
+                Collections.unmodifiableMap(extensions));
+    }
+
+    @Override
+    public int preVisitDirectory(String path, EntryStat stat) {
+        return DirectoryWalker.CONTINUE;
+    }
+
+    @Override
+    public int visitFile(String path, EntryStat stat) {
+
+        offer(largestFiles, path, stat.size);
+
+        String extension = getExtension(path);
+        long[] bytes = extensionBytes.get(extension);
+
+        if(bytes == null) {
+            bytes = new long[1];
+            extensionBytes.put(extension, bytes);
+        }
+
+        bytes[0] += stat.size;
+        return DirectoryWalker.CONTINUE;
+    }
+
+    @Override
+    public void postVisitDirectory(String path, long bytes) {
+
+        if(!path.equals(rootPath)) {
+            offer(largestDirectories, path, bytes);
+        }
+    }
+
+    private void offer(PriorityQueue<StorageEntry> heap, String path, long bytes) {
+
+        if(count <= 0) {
+            return;
+        }
+
+        //Only create an entry when it makes it into the heap
+        if(heap.size() >= count) {
+
+            if(bytes <= heap.peek().getBytes()) {
+                return;
+            }
+
+            heap.poll();
+        }
+
+        heap.add(new StorageEntry(path, bytes));
+    }
+
+    private static String getExtension(String path) {
+
+        int dot = path.lastIndexOf('.');
+
+        if(dot == -1 || dot < path.lastIndexOf(File.separatorChar) + 2 || dot == path.length() - 1) {
+            return "";
+        }
+
+        return path.substring(dot + 1).toLowerCase(Locale.US);
+    }
+
+    private static List<StorageEntry> toSortedList(PriorityQueue<StorageEntry> heap) {
+
+        List<StorageEntry> entries = new ArrayList<>(heap);
+        Collections.sort(entries, Collections.reverseOrder(SMALLEST_FIRST));
+        return Collections.unmodifiableList(entries);
+    }
+}
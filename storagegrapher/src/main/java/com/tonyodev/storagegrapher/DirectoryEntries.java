@@ -0,0 +1,127 @@
+package com.tonyodev.storagegrapher;
+
+import android.annotation.TargetApi;
+import android.os.Build;
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+
+import java.io.IOException;
+import java.nio.file.DirectoryIteratorException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Iterator;
+
+/**
+ * Iterates the names of the entries inside a directory. Directories are
+ * opened by the default {@link StorageBackend}. Streamed entries read names
+ * from the directory as they are iterated so a large directory is never
+ * held in memory at once. Array entries iterate a listing read up front.
+ */
+public abstract class DirectoryEntries {
+
+    protected DirectoryEntries() {
+    }
+
+    /**
+     * @return the name of the next entry or null when there are no more entries
+     * */
+    @Nullable
+    protected abstract String next();
+
+    /**
+     * Releases the directory handle. Safe to call more than once.
+     * */
+    protected abstract void close();
+
+    /**
+     * @param names names of the entries of a directory. The array is cleared while iterating
+     * @return entries that iterate the names
+     * */
+    @NonNull
+    public static DirectoryEntries of(@NonNull String[] names) {
+        return new ArrayEntries(names);
+    }
+
+    /**
+     * @param directory directory path
+     * @return entries of the directory or null if the directory cannot be read
+     * */
+    static DirectoryEntries open(String directory) {
+        return StorageBackend.getDefault().openDirectory(directory);
+    }
+
+    @TargetApi(Build.VERSION_CODES.O)
+    static final class StreamEntries extends DirectoryEntries {
+
+        private final DirectoryStream<Path> stream;
+        private final Iterator<Path> iterator;
+
+        private StreamEntries(DirectoryStream<Path> stream) {
+            this.stream = stream;
+            this.iterator = stream.iterator();
+        }
+
+        static DirectoryEntries open(String directory) {
+
+            try {
+                return new StreamEntries(Files.newDirectoryStream(Paths.get(directory)));
+            } catch (IOException | SecurityException e) {
+                return null;
+            }
+        }
+
+        @Override
+        protected String next() {
+
+            try {
+
+                if(iterator.hasNext()) {
+                    return iterator.next().getFileName().toString();
+                }
+            } catch (DirectoryIteratorException e) {
+                //Directory became unreadable while iterating. Treat it as exhausted
+            }
+
+            return null;
+        }
+
+        @Override
+        protected void close() {
+
+            try {
+                stream.close();
+            } catch (IOException e) {
+                //Nothing to recover. The stream was only read
+            }
+        }
+    }
+
+    static final class ArrayEntries extends DirectoryEntries {
+
+        private String[] names;
+        private int index;
+
+        ArrayEntries(String[] names) {
+            this.names = names;
+        }
+
+        @Override
+        protected String next() {
+
+            if(names == null || index >= names.length) {
+                return null;
+            }
+
+            String name = names[index];
+            names[index++] = null;
+            return name;
+        }
+
+        @Override
+        protected void close() {
+            names = null;
+        }
+    }
+}
@@ -0,0 +1,63 @@
+package com.tonyodev.storagegrapher;
+
+import android.support.annotation.NonNull;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * This class holds the result of a directory analysis. The largest
+ * files, largest directories and the size per file extension are
+ * collected in the same pass as the total.
+ */
+public final class DirectoryReport {
+
+    private final ScanResult scanResult;
+    private final List<StorageEntry> largestFiles;
+    private final List<StorageEntry> largestDirectories;
+    private final Map<String, Long> extensionBytes;
+
+    DirectoryReport(ScanResult scanResult, List<StorageEntry> largestFiles,
+                    List<StorageEntry> largestDirectories, Map<String, Long> extensionBytes) {
+        this.scanResult = scanResult;
+        this.largestFiles = largestFiles;
+        this.largestDirectories = largestDirectories;
+        this.extensionBytes = extensionBytes;
+    }
+
+    /**
+     * @return  total size and entry counts of the scan
+     * */
+    @NonNull
+    public ScanResult getScanResult() {
+        return scanResult;
+    }
+
+    /**
+     * @return  largest files, largest first
+     * */
+    @NonNull
+    public List<StorageEntry> getLargestFiles() {
+        return largestFiles;
+    }
+
+    /**
+     * @return  largest directories below the scanned directory, largest first.
+     * The size of a directory includes all of its subdirectories, so the
+     * ancestors of a large file are listed along with the directory that
+     * holds it
+     * */
+    @NonNull
+    public List<StorageEntry> getLargestDirectories() {
+        return largestDirectories;
+    }
+
+    /**
+     * @return  bytes per lower case file extension. Files without
+     * an extension are stored under an empty string
+     * */
+    @NonNull
+    public Map<String, Long> getExtensionBytes() {
+        return extensionBytes;
+    }
+}
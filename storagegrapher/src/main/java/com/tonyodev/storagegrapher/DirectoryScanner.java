@@ -0,0 +1,140 @@
+package com.tonyodev.storagegrapher;
+
+import java.io.File;
+
+/**
+ * Walks a directory tree reading the type and size of every
+ * entry with a single stat call. Symbolic links are counted
+ * by their own size and are not followed.
+ */
+final class DirectoryScanner implements DirectoryWalker.Visitor {
+
+    //Number of entries between progress time checks
+    private static final int PROGRESS_MASK = 0xFF;
+
+    private final ScanHandle handle;
+    private final DirectoryWalker.Visitor delegate;
+    private long bytes;
+    private long fileCount;
+    private long directoryCount;
+
+    private DirectoryScanner(ScanHandle handle, DirectoryWalker.Visitor delegate) {
+        this.handle = handle;
+        this.delegate = delegate;
+    }
+
+    static ScanResult scan(File root) {
+        return new DirectoryScanner(null, null).run(root);
+    }
+
+    static ScanResult scan(File root, ScanHandle handle) {
+        return new DirectoryScanner(handle, null).run(root);
+    }
+
+    /**
+     * @param delegate visitor that receives every entry of the scan. Its
+     *                 result is honoured when it skips or terminates
+     * */
+    static ScanResult scan(File root, ScanHandle handle, DirectoryWalker.Visitor delegate) {
+        return new DirectoryScanner(handle, delegate).run(root, new EntryStat());
+    }
+
+    /**
+     * Scans with cycle detection.
+     *
+     * @param flags combination of the Storage.SCAN_* flags
+     * */
+    static ScanResult scan(File root, int flags) {
+
+        TraversalGuard guard = new TraversalGuard((flags & Storage.SCAN_SAME_FILE_SYSTEM) != 0,
+                (flags & Storage.SCAN_DEDUPLICATE_HARD_LINKS) != 0);
+        EntryStat stat = new EntryStat();
+        stat.followLinks = (flags & Storage.SCAN_FOLLOW_LINKS) != 0;
+
+        return new DirectoryScanner(null, guard).run(root, stat);
+    }
+
+    private ScanResult run(File root) {
+        return run(root, new EntryStat());
+    }
+
+    private ScanResult run(File root, EntryStat stat) {
+
+        String rootPath = root.getAbsolutePath();
+        StorageMetrics.Listener metrics = StorageMetrics.listener;
+        long startNanos = metrics != null ? System.nanoTime() : 0;
+
+        long total = DirectoryWalker.walk(rootPath, stat, this);
+
+        long entries = fileCount + directoryCount;
+        long savedStatCalls = Math.max(0, entries * EntryStat.LEGACY_CALLS_PER_ENTRY - stat.statCalls);
+
+        if(metrics != null) {
+            metrics.onScan(rootPath, entries, total, stat.statCalls, System.nanoTime() - startNanos);
+        }
+
+        return new ScanResult(rootPath, total, fileCount, directoryCount,
+                stat.statCalls, savedStatCalls);
+    }
+
+    @Override
+    public int preVisitDirectory(String path, EntryStat stat) {
+
+        if(delegate != null) {
+
+            int result = delegate.preVisitDirectory(path, stat);
+
+            if(result != DirectoryWalker.CONTINUE) {
+                return result;
+            }
+        }
+
+        directoryCount++;
+        bytes += stat.size;
+        return onEntry();
+    }
+
+    @Override
+    public int visitFile(String path, EntryStat stat) {
+
+        if(delegate != null) {
+
+            int result = delegate.visitFile(path, stat);
+
+            if(result != DirectoryWalker.CONTINUE) {
+                return result;
+            }
+        }
+
+        fileCount++;
+        bytes += stat.size;
+        return onEntry();
+    }
+
+    @Override
+    public void postVisitDirectory(String path, long bytes) {
+
+        if(delegate != null) {
+            delegate.postVisitDirectory(path, bytes);
+        }
+    }
+
+    private int onEntry() {
+
+        if(handle == null) {
+            return DirectoryWalker.CONTINUE;
+        }
+
+        if(handle.isCancelled()) {
+            return DirectoryWalker.TERMINATE;
+        }
+
+        long entries = fileCount + directoryCount;
+
+        if((entries & PROGRESS_MASK) == 0) {
+            handle.onProgress(bytes, entries);
+        }
+
+        return DirectoryWalker.CONTINUE;
+    }
+}
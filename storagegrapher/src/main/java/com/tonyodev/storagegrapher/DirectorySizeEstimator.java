@@ -0,0 +1,347 @@
+package com.tonyodev.storagegrapher;
+
+import android.support.annotation.NonNull;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Estimates the size of a directory tree within a time or entry budget.
+ * Each probe walks from the root to a leaf picking one random sub
+ * directory per level and extrapolates the size of every level by the
+ * fan out seen on the way down (Knuth's tree size estimator). The mean
+ * of all probes is an unbiased estimate of the total.
+ *
+ * Directories read by earlier probes are cached, so calling refine again
+ * keeps improving the same estimate. When every directory of the tree has
+ * been read the exact size is returned. Directories that cannot be read
+ * count as empty.
+ *
+ * Budgets are also checked while a directory is listed. A listing cut off
+ * by the budget is continued by the next refine, so a single large
+ * directory does not overrun the budget. Without any budget, refining
+ * stops once the cache is full, since the exact size can no longer be
+ * reached.
+ *
+ * Each refine that reads the file system is reported to
+ * {@link StorageMetrics} as a scan of the entries and bytes it read. The
+ * estimate itself is not reported.
+ */
+public final class DirectorySizeEstimator {
+
+    private static final int DEFAULT_MAX_CACHED_DIRECTORIES = 4096;
+    private static final double Z_95 = 1.96;
+
+    //Entries listed between two deadline checks
+    private static final int DEADLINE_CHECK_INTERVAL = 64;
+
+    private static final Summary UNREADABLE = new Summary(0, new String[0]);
+
+    private final String rootPath;
+    private final int maxCachedDirectories;
+    private final Map<String, Summary> summaries = new HashMap<>();
+    private final EntryStat stat = new EntryStat();
+    private final Random random = new Random();
+
+    private long samples;
+    private double mean;
+    private double squaredDeviations;
+    private long discoveredDirectories = 1;
+    private boolean cacheFull = false;
+
+    //Budget of the running refine
+    private boolean timed;
+    private long deadline;
+    private long statCallLimit;
+
+    //Listing cut off by the budget. Continued before any other directory is listed
+    private Listing pendingListing;
+
+    //Entries and bytes read by the running refine
+    private long readEntries;
+    private long readBytes;
+
+    /**
+     * @param directory directory to estimate
+     * */
+    public DirectorySizeEstimator(@NonNull File directory) {
+        this(directory, DEFAULT_MAX_CACHED_DIRECTORIES);
+    }
+
+    /**
+     * @param directory directory to estimate
+     * @param maxCachedDirectories maximum number of directory listings kept between probes
+     * */
+    public DirectorySizeEstimator(@NonNull File directory, int maxCachedDirectories) {
+
+        if(directory == null) {
+            throw new NullPointerException("File cannot be null");
+        }
+
+        this.rootPath = directory.getAbsolutePath();
+        this.maxCachedDirectories = maxCachedDirectories;
+    }
+
+    /**
+     * Runs probes until the time budget is spent and returns the refined estimate.
+     *
+     * @param budgetMillis time budget in milliseconds
+     * @return current estimate
+     * */
+    public synchronized SizeEstimate refine(long budgetMillis) {
+        return refine(budgetMillis, Long.MAX_VALUE);
+    }
+
+    /**
+     * Runs probes until the entry budget is spent and returns the refined estimate.
+     *
+     * @param entryBudget maximum number of entries to stat
+     * @return current estimate
+     * */
+    public synchronized SizeEstimate refineByEntries(long entryBudget) {
+        return refine(Long.MAX_VALUE, entryBudget);
+    }
+
+    /**
+     * @return current estimate without running more probes
+     * */
+    public synchronized SizeEstimate getEstimate() {
+
+        if(isComplete()) {
+            long bytes = getExactBytes();
+            return new SizeEstimate(rootPath, bytes, bytes, bytes, samples, true);
+        }
+
+        long bytes = Math.round(mean);
+        double margin = samples > 1 ? Z_95 * Math.sqrt(squaredDeviations / (samples - 1) / samples) : mean;
+
+        return new SizeEstimate(rootPath, bytes, Math.max(0, Math.round(mean - margin)),
+                Math.round(mean + margin), samples, false);
+    }
+
+    private SizeEstimate refine(long budgetMillis, long entryBudget) {
+
+        //System.nanoTime keeps the estimator free of framework calls so it also runs on the JVM
+        timed = budgetMillis != Long.MAX_VALUE;
+        deadline = timed ? System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(Math.max(0, budgetMillis)) : 0;
+        boolean unbounded = !timed && entryBudget == Long.MAX_VALUE;
+        long spentEntries = 0;
+
+        StorageMetrics.Listener metrics = StorageMetrics.listener;
+        long startNanos = metrics != null ? System.nanoTime() : 0;
+        long startStatCalls = stat.statCalls;
+        readEntries = 0;
+        readBytes = 0;
+
+        do {
+
+            if(isComplete() || (unbounded && cacheFull)) {
+                break;
+            }
+
+            long statCalls = stat.statCalls;
+            statCallLimit = entryBudget == Long.MAX_VALUE ? Long.MAX_VALUE : statCalls + entryBudget - spentEntries;
+            probe();
+
+            //Probes served from the cache still count as one entry so the loop always ends
+            spentEntries += Math.max(1, stat.statCalls - statCalls);
+        } while (spentEntries < entryBudget
+                && (!timed || System.nanoTime() - deadline < 0));
+
+        if(metrics != null && stat.statCalls != startStatCalls) {
+            metrics.onScan(rootPath, readEntries, readBytes, stat.statCalls - startStatCalls,
+                    System.nanoTime() - startNanos);
+        }
+
+        return getEstimate();
+    }
+
+    private void probe() {
+
+        //A probe only starts once the cut off listing is done
+        if(pendingListing != null && list(pendingListing) == null) {
+            return;
+        }
+
+        String path = rootPath;
+        double weight = 1;
+        double estimate = 0;
+
+        while (path != null) {
+
+            Summary summary = getSummary(path);
+
+            if(summary == null) {
+                //Cut off by the budget. The probe is not counted
+                return;
+            }
+
+            estimate += weight * summary.bytes;
+
+            if(summary.directories.length == 0) {
+                break;
+            }
+
+            weight *= summary.directories.length;
+            path = path + File.separatorChar + summary.directories[random.nextInt(summary.directories.length)];
+        }
+
+        samples++;
+        double delta = estimate - mean;
+        mean += delta / samples;
+        squaredDeviations += delta * (estimate - mean);
+    }
+
+    //Returns null when the budget ran out while listing the directory
+    private Summary getSummary(String path) {
+
+        Summary summary = summaries.get(path);
+
+        if(summary != null) {
+            return summary;
+        }
+
+        boolean root = path.equals(rootPath);
+        boolean read = root ? stat.readRoot(path) : stat.read(path);
+
+        if(!read) {
+            //Counted as read so the estimate can still complete
+            cache(path, UNREADABLE);
+            return UNREADABLE;
+        }
+
+        //Other directories were already counted by the listing of their parent
+        if(root) {
+            readEntries++;
+            readBytes += stat.size;
+        }
+
+        Listing listing = new Listing(path, stat.size);
+
+        if(stat.type != EntryStat.TYPE_DIRECTORY) {
+            return cache(path, listing.toSummary());
+        }
+
+        return list(listing);
+    }
+
+    //Lists the directory from where an earlier listing was cut off. The
+    //directory is opened again instead of holding it open between refines
+    private Summary list(Listing listing) {
+
+        DirectoryEntries entries = DirectoryEntries.open(listing.path);
+        pendingListing = null;
+
+        if(entries != null) {
+
+            try {
+
+                String name;
+                int start = listing.position;
+                int skipped = 0;
+                int listed = 0;
+
+                while ((name = entries.next()) != null) {
+
+                    if(skipped < start) {
+                        skipped++;
+                        continue;
+                    }
+
+                    //At least one entry is listed per call so a listing always moves forward
+                    if(listed > 0 && isOverBudget(listed)) {
+                        pendingListing = listing;
+                        return null;
+                    }
+
+                    listed++;
+                    listing.position++;
+
+                    if(!stat.read(listing.path + File.separatorChar + name)) {
+                        continue;
+                    }
+
+                    readEntries++;
+                    readBytes += stat.size;
+
+                    if(stat.type == EntryStat.TYPE_DIRECTORY) {
+                        listing.directories.add(name);
+                    }else {
+                        listing.bytes += stat.size;
+                    }
+                }
+            } finally {
+                entries.close();
+            }
+        }
+
+        return cache(listing.path, listing.toSummary());
+    }
+
+    private boolean isOverBudget(int listed) {
+        return stat.statCalls >= statCallLimit
+                || (timed && listed % DEADLINE_CHECK_INTERVAL == 0 && System.nanoTime() - deadline >= 0);
+    }
+
+    private Summary cache(String path, Summary summary) {
+
+        if(summaries.size() < maxCachedDirectories) {
+            summaries.put(path, summary);
+            discoveredDirectories += summary.directories.length;
+        }else {
+            cacheFull = true;
+        }
+
+        return summary;
+    }
+
+    private boolean isComplete() {
+        return !cacheFull && summaries.size() == discoveredDirectories;
+    }
+
+    private long getExactBytes() {
+
+        long bytes = 0;
+
+        for (Summary summary : summaries.values()) {
+            bytes += summary.bytes;
+        }
+
+        return bytes;
+    }
+
+    private static final class Listing {
+
+        final String path;
+        final List<String> directories = new ArrayList<>();
+        long bytes;
+
+        //Entries listed so far
+        int position;
+
+        Listing(String path, long bytes) {
+            this.path = path;
+            this.bytes = bytes;
+        }
+
+        Summary toSummary() {
+            return new Summary(bytes, directories.toArray(new String[directories.size()]));
+        }
+    }
+
+    private static final class Summary {
+
+        final long bytes;
+        final String[] directories;
+
+        Summary(long bytes, String[] directories) {
+            this.bytes = bytes;
+            this.directories = directories;
+        }
+    }
+}
@@ -0,0 +1,356 @@
+package com.tonyodev.storagegrapher;
+
+import android.support.annotation.NonNull;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Persistent index of directory sizes used to speed up repeated scans.
+ * For every directory the index stores its last modified time, the size
+ * of the files directly inside it and the names of its sub directories.
+ * A rescan only lists directories whose last modified time changed, all
+ * other directories cost a single stat call.
+ *
+ * Note: A directory's last modified time only changes when entries are
+ * added, removed or renamed. A file that grows in place is picked up the
+ * next time its directory changes or after {@link #clear()} is called.
+ *
+ * Each call reports the reused and listed directories to
+ * {@link StorageMetrics} as a cache lookup, and the entries it read as a
+ * scan.
+ */
+public final class DirectorySizeIndex {
+
+    private static final int MAGIC = 0x53474458;
+    private static final int VERSION = 1;
+
+    //Directories modified this close to a scan may change again within the
+    //same mtime tick. They are stored as dirty so the next scan lists them again
+    private static final long MTIME_GRANULARITY_MILLIS = 2000;
+
+    private final File indexFile;
+    private final Map<String, Record> records = new HashMap<>();
+    private final EntryStat stat = new EntryStat();
+
+    private boolean loaded = false;
+    private boolean changed = false;
+    private int generation = 0;
+    private long scanStartMillis;
+
+    //Directories reused and listed again by the current scan
+    private long reusedDirectories;
+    private long listedDirectories;
+
+    //Entries read by the current scan
+    private long visitedEntries;
+
+    /**
+     * @param indexFile file used to persist the index
+     * */
+    public DirectorySizeIndex(@NonNull File indexFile) {
+
+        if(indexFile == null) {
+            throw new NullPointerException("File cannot be null");
+        }
+
+        this.indexFile = indexFile;
+    }
+
+    /**
+     * Gets the size(bytes) of a directory or file reusing the sizes of
+     * unchanged directories from the index. The index is saved when
+     * anything changed.
+     *
+     * @param file file
+     * @return directory size in bytes
+     * */
+    public synchronized long getDirectorySize(@NonNull File file) {
+
+        if(file == null) {
+            throw new NullPointerException("File cannot be null");
+        }
+
+        load();
+
+        String path = file.getAbsolutePath();
+        StorageMetrics.Listener metrics = StorageMetrics.listener;
+        long startNanos = metrics != null ? System.nanoTime() : 0;
+        long statCalls = stat.statCalls;
+
+        if(!stat.readRoot(path)) {
+            return 0;
+        }
+
+        if(stat.type != EntryStat.TYPE_DIRECTORY) {
+            return stat.size;
+        }
+
+        generation++;
+        scanStartMillis = System.currentTimeMillis();
+        reusedDirectories = 0;
+        listedDirectories = 0;
+        visitedEntries = 1;
+        long size = measure(path, stat.size, stat.lastModified);
+        removeStaleRecords(path);
+
+        if(metrics != null) {
+            metrics.onCacheLookup(StorageMetrics.CACHE_DIRECTORY_INDEX, reusedDirectories, listedDirectories);
+            metrics.onScan(path, visitedEntries, size, stat.statCalls - statCalls, System.nanoTime() - startNanos);
+        }
+
+        if(changed) {
+            save();
+        }
+
+        return size;
+    }
+
+    /**
+     * Removes all entries from the index. The next scan walks every directory.
+     * */
+    public synchronized void clear() {
+        records.clear();
+        loaded = true;
+        changed = true;
+        save();
+    }
+
+    private long measure(String path, long directorySize, long lastModified) {
+
+        Record record = records.get(path);
+
+        if(record != null && record.lastModified != 0 && record.lastModified == lastModified) {
+
+            long size = record.bytes;
+            boolean intact = true;
+
+            for (String name : record.directories) {
+
+                String subPath = path + File.separatorChar + name;
+
+                if(!stat.read(subPath) || stat.type != EntryStat.TYPE_DIRECTORY) {
+                    intact = false;
+                    break;
+                }
+
+                visitedEntries++;
+                size += measure(subPath, stat.size, stat.lastModified);
+            }
+
+            if(intact) {
+                record.generation = generation;
+                reusedDirectories++;
+                return size;
+            }
+        }
+
+        return rescan(path, directorySize, lastModified);
+    }
+
+    private long rescan(String path, long directorySize, long lastModified) {
+
+        listedDirectories++;
+
+        long bytes = directorySize;
+        List<String> directories = new ArrayList<>();
+        DirectoryEntries entries = DirectoryEntries.open(path);
+
+        if(entries != null) {
+
+            try {
+
+                String name;
+
+                while ((name = entries.next()) != null) {
+
+                    if(!stat.read(path + File.separatorChar + name)) {
+                        continue;
+                    }
+
+                    visitedEntries++;
+
+                    if(stat.type == EntryStat.TYPE_DIRECTORY) {
+                        directories.add(name);
+                    }else {
+                        bytes += stat.size;
+                    }
+                }
+            } finally {
+                entries.close();
+            }
+        }
+
+        if(scanStartMillis - lastModified < MTIME_GRANULARITY_MILLIS) {
+            lastModified = 0;
+        }
+
+        Record record = new Record(lastModified, bytes,
+                directories.toArray(new String[directories.size()]));
+        record.generation = generation;
+        records.put(path, record);
+        changed = true;
+
+        long size = bytes;
+
+        for (String name : record.directories) {
+
+            String subPath = path + File.separatorChar + name;
+
+            if(stat.read(subPath) && stat.type == EntryStat.TYPE_DIRECTORY) {
+                size += measure(subPath, stat.size, stat.lastModified);
+            }
+        }
+
+        return size;
+    }
+
+    private void removeStaleRecords(String root) {
+
+        String prefix = root + File.separatorChar;
+        Iterator<Map.Entry<String, Record>> iterator = records.entrySet().iterator();
+
+        while (iterator.hasNext()) {
+
+            Map.Entry<String, Record> entry = iterator.next();
+
+            if(entry.getValue().generation != generation && entry.getKey().startsWith(prefix)) {
+                iterator.remove();
+                changed = true;
+            }
+        }
+    }
+
+    private void load() {
+
+        if(loaded) {
+            return;
+        }
+
+        loaded = true;
+
+        if(!indexFile.exists()) {
+            return;
+        }
+
+        DataInputStream input = null;
+
+        try {
+
+            input = new DataInputStream(new BufferedInputStream(new FileInputStream(indexFile)));
+
+            if(input.readInt() != MAGIC || input.readInt() != VERSION) {
+                return;
+            }
+
+            int count = input.readInt();
+
+            for (int i = 0; i < count; i++) {
+
+                String path = input.readUTF();
+                long lastModified = input.readLong();
+                long bytes = input.readLong();
+                String[] directories = new String[input.readInt()];
+
+                for (int x = 0; x < directories.length; x++) {
+                    directories[x] = input.readUTF();
+                }
+
+                records.put(path, new Record(lastModified, bytes, directories));
+            }
+        } catch (IOException e) {
+            //Corrupt or partially written index. Start over
+            records.clear();
+        } finally {
+            closeQuietly(input);
+        }
+    }
+
+    private boolean save() {
+
+        File tempFile = new File(indexFile.getAbsolutePath() + ".tmp");
+        DataOutputStream output = null;
+        boolean saved = false;
+
+        try {
+
+            File parent = indexFile.getParentFile();
+
+            if(parent != null && !parent.exists()) {
+                parent.mkdirs();
+            }
+
+            output = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tempFile)));
+            output.writeInt(MAGIC);
+            output.writeInt(VERSION);
+            output.writeInt(records.size());
+
+            for (Map.Entry<String, Record> entry : records.entrySet()) {
+
+                Record record = entry.getValue();
+                output.writeUTF(entry.getKey());
+                output.writeLong(record.lastModified);
+                output.writeLong(record.bytes);
+                output.writeInt(record.directories.length);
+
+                for (String name : record.directories) {
+                    output.writeUTF(name);
+                }
+            }
+
+            output.close();
+            output = null;
+            saved = tempFile.renameTo(indexFile);
+        } catch (IOException e) {
+            //Surfaced by returning false. The previous index stays in place
+        } finally {
+            closeQuietly(output);
+        }
+
+        if(saved) {
+            changed = false;
+        }else {
+            tempFile.delete();
+        }
+
+        return saved;
+    }
+
+    private static void closeQuietly(Closeable closeable) {
+
+        if(closeable != null) {
+
+            try {
+                closeable.close();
+            } catch (IOException e) {
+                //Only files that were read or already failed are closed quietly
+            }
+        }
+    }
+
+    private static final class Record {
+
+        final long lastModified;
+        final long bytes;
+        final String[] directories;
+        int generation;
+
+        Record(long lastModified, long bytes, String[] directories) {
+            this.lastModified = lastModified;
+            this.bytes = bytes;
+            this.directories = directories;
+        }
+    }
+}
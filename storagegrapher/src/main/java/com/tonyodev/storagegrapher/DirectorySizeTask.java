@@ -0,0 +1,158 @@
+package com.tonyodev.storagegrapher;
+
+import android.annotation.TargetApi;
+import android.os.Build;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * Fork/Join task used to calculate the size of a directory in parallel.
+ * Each task sums the files directly inside its directory and forks one
+ * sub task per sub directory. Results are reduced through join so no
+ * shared counter is written by more than one thread.
+ *
+ * The size of a sub tree is not known before it is walked, so forking is
+ * bounded by the queued work instead: once a worker has more than a few
+ * tasks queued that no other worker has stolen, sub directories are
+ * walked inline on the current thread. Small trees then run almost
+ * serially, and forks are only made while there are idle workers to
+ * steal them.
+ *
+ * Like the reduced size, the entries and stat calls of each task are
+ * summed by the task that joins it and reported once for the whole scan.
+ */
+@TargetApi(Build.VERSION_CODES.LOLLIPOP)
+final class DirectorySizeTask extends RecursiveTask<Long> {
+
+    //Queued tasks not yet stolen above which sub directories are walked inline
+    private static final int SURPLUS_THRESHOLD = 3;
+
+    //Pools are reused across scans. Idle workers exit on their own, so a
+    //cached pool holds no threads between scans
+    private static final Map<Integer, ForkJoinPool> pools = new HashMap<>();
+
+    private final String directory;
+    private final long directorySize;
+
+    //Written by the worker that computes the task, read after join
+    private long entries;
+    private long statCalls;
+
+    DirectorySizeTask(String directory, long directorySize) {
+        this.directory = directory;
+        this.directorySize = directorySize;
+    }
+
+    /**
+     * @param rootStat stat of the directory
+     * @param parallelism number of workers of the pool
+     * @return size in bytes of the directory and everything below it
+     * */
+    static long invoke(String directory, EntryStat rootStat, int parallelism) {
+
+        StorageMetrics.Listener metrics = StorageMetrics.listener;
+        long startNanos = metrics != null ? System.nanoTime() : 0;
+
+        DirectorySizeTask task = new DirectorySizeTask(directory, rootStat.size);
+        long size = getPool(parallelism).invoke(task);
+
+        if(metrics != null) {
+            metrics.onScan(directory, task.entries + 1, size, task.statCalls + rootStat.statCalls,
+                    System.nanoTime() - startNanos);
+        }
+
+        return size;
+    }
+
+    private static ForkJoinPool getPool(int parallelism) {
+
+        synchronized (pools) {
+
+            ForkJoinPool pool = pools.get(parallelism);
+
+            if(pool == null) {
+                pool = new ForkJoinPool(parallelism);
+                pools.put(parallelism, pool);
+            }
+
+            return pool;
+        }
+    }
+
+    @Override
+    protected Long compute() {
+
+        long size = directorySize;
+        DirectoryEntries entries = DirectoryEntries.open(directory);
+
+        if(entries == null) {
+            return size;
+        }
+
+        long visited = 0;
+        long subStatCalls = 0;
+
+        EntryStat stat = new EntryStat();
+        List<DirectorySizeTask> subTasks = null;
+        String name;
+
+        try {
+
+            while ((name = entries.next()) != null) {
+
+                String path = directory + File.separatorChar + name;
+
+                if(!stat.read(path)) {
+                    continue;
+                }
+
+                visited++;
+
+                if(stat.type == EntryStat.TYPE_DIRECTORY) {
+
+                    if(getSurplusQueuedTaskCount() > SURPLUS_THRESHOLD) {
+                        DirectorySizeTask subTask = new DirectorySizeTask(path, stat.size);
+                        size += subTask.compute();
+                        visited += subTask.entries;
+                        subStatCalls += subTask.statCalls;
+                        continue;
+                    }
+
+                    if(subTasks == null) {
+                        subTasks = new ArrayList<>();
+                    }
+
+                    DirectorySizeTask subTask = new DirectorySizeTask(path, stat.size);
+                    subTask.fork();
+                    subTasks.add(subTask);
+                }else {
+                    size += stat.size;
+                }
+            }
+        } finally {
+            entries.close();
+        }
+
+        if(subTasks != null) {
+
+            //Join in reverse fork order so the current thread can pop and run
+            //its own most recently forked tasks before they are stolen
+            for (int i = subTasks.size() - 1; i >= 0; i--) {
+                DirectorySizeTask subTask = subTasks.get(i);
+                size += subTask.join();
+                visited += subTask.entries;
+                subStatCalls += subTask.statCalls;
+            }
+        }
+
+        this.entries = visited;
+        this.statCalls = stat.statCalls + subStatCalls;
+        return size;
+    }
+}
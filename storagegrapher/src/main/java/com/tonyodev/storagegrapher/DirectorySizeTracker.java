@@ -0,0 +1,473 @@
+package com.tonyodev.storagegrapher;
+
+import android.os.FileObserver;
+import android.os.Handler;
+import android.os.Looper;
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+
+import java.io.File;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Keeps the size of a directory tree current without polling. The tree
+ * is scanned once when tracking starts. After that every directory is
+ * watched with a FileObserver and only the directories that report a
+ * change are listed again. A full rescan happens only when the kernel
+ * event queue overflows.
+ *
+ * The initial scan, full rescans and each directory refresh are reported
+ * to {@link StorageMetrics} as scans. A refresh reports the entries of
+ * the refreshed directory and of any new sub trees it walked.
+ *
+ * Note: Each directory uses one inotify watch. Very large trees can run
+ * into the per user watch limit of the device.
+ */
+public final class DirectorySizeTracker {
+
+    /**
+     * Listener notified on the main thread when the tracked size changes
+     * */
+    public interface OnSizeChangedListener {
+        void onSizeChanged(@NonNull File directory, long bytes);
+    }
+
+    //inotify flags FileObserver does not define
+    private static final int EVENT_QUEUE_OVERFLOW = 0x00004000;
+    private static final int EVENT_IGNORED = 0x00008000;
+
+    private static final int OBSERVER_MASK = FileObserver.CREATE | FileObserver.DELETE
+            | FileObserver.MOVED_FROM | FileObserver.MOVED_TO | FileObserver.MODIFY
+            | FileObserver.CLOSE_WRITE | FileObserver.DELETE_SELF | FileObserver.MOVE_SELF;
+
+    private static final long DEFAULT_REFRESH_DELAY_MILLIS = 250;
+
+    private final File directory;
+    private final String rootPath;
+    private final long refreshDelayMillis;
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+    private final EntryStat stat = new EntryStat();
+    private final DirectoryWalker.Visitor nodeVisitor = new DirectoryWalker.Visitor() {
+        @Override
+        public int preVisitDirectory(String path, EntryStat stat) {
+            scannedEntries++;
+            addNode(path, stat.size);
+            return DirectoryWalker.CONTINUE;
+        }
+
+        @Override
+        public int visitFile(String path, EntryStat stat) {
+            scannedEntries++;
+            addFile(path, stat.size);
+            return DirectoryWalker.CONTINUE;
+        }
+
+        @Override
+        public void postVisitDirectory(String path, long bytes) {
+        }
+    };
+
+    //Only accessed by the worker. A new worker waits until the previous one terminated
+    private final Map<String, Node> nodes = new HashMap<>();
+    private final Set<String> pendingDirectories = new HashSet<>();
+    private long trackedBytes;
+
+    //Entries read by the running scan or refresh
+    private long scannedEntries;
+
+    private ScheduledExecutorService worker;
+    private ScheduledExecutorService stoppedWorker;
+    private volatile OnSizeChangedListener listener;
+    private volatile long bytes = -1;
+
+    /**
+     * @param directory directory to track
+     * */
+    public DirectorySizeTracker(@NonNull File directory) {
+        this(directory, DEFAULT_REFRESH_DELAY_MILLIS);
+    }
+
+    /**
+     * @param directory directory to track
+     * @param refreshDelayMillis delay used to coalesce bursts of change events
+     *                           into a single refresh of a directory
+     * */
+    public DirectorySizeTracker(@NonNull File directory, long refreshDelayMillis) {
+
+        if(directory == null) {
+            throw new NullPointerException("File cannot be null");
+        }
+
+        this.directory = directory;
+        this.rootPath = directory.getAbsolutePath();
+        this.refreshDelayMillis = Math.max(0, refreshDelayMillis);
+    }
+
+    /**
+     * Scans the directory and starts watching it for changes.
+     *
+     * @param listener listener notified on the main thread
+     * */
+    public synchronized void start(@Nullable OnSizeChangedListener listener) {
+
+        this.listener = listener;
+
+        if(worker != null) {
+            return;
+        }
+
+        final ScheduledExecutorService previousWorker = stoppedWorker;
+        stoppedWorker = null;
+
+        ScheduledThreadPoolExecutor executor = new ScheduledThreadPoolExecutor(1);
+
+        //Refreshes still waiting for their delay are dropped when the tracker stops
+        executor.setExecuteExistingDelayedTasksAfterShutdownPolicy(false);
+        worker = executor;
+        worker.execute(new Runnable() {
+            @Override
+            public void run() {
+
+                if(previousWorker != null) {
+
+                    try {
+                        previousWorker.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        return;
+                    }
+                }
+
+                rescan();
+            }
+        });
+    }
+
+    /**
+     * Stops watching the directory. The last known size stays available.
+     * */
+    public synchronized void stop() {
+
+        listener = null;
+
+        if(worker == null) {
+            return;
+        }
+
+        final ScheduledExecutorService service = worker;
+        worker = null;
+        stoppedWorker = service;
+
+        service.execute(new Runnable() {
+            @Override
+            public void run() {
+                stopObservers();
+                pendingDirectories.clear();
+            }
+        });
+        service.shutdown();
+    }
+
+    /**
+     * @return the tracked directory
+     * */
+    @NonNull
+    public File getDirectory() {
+        return directory;
+    }
+
+    /**
+     * @return the last known size of the directory in bytes
+     * or -1 if the initial scan has not completed
+     * */
+    public long getBytes() {
+        return bytes;
+    }
+
+    private void rescan() {
+
+        stopObservers();
+        pendingDirectories.clear();
+        trackedBytes = 0;
+
+        StorageMetrics.Listener metrics = StorageMetrics.listener;
+        long startNanos = metrics != null ? System.nanoTime() : 0;
+        long statCalls = stat.statCalls;
+        scannedEntries = 0;
+
+        DirectoryWalker.walk(rootPath, stat, nodeVisitor);
+
+        if(metrics != null) {
+            metrics.onScan(rootPath, scannedEntries, trackedBytes, stat.statCalls - statCalls,
+                    System.nanoTime() - startNanos);
+        }
+
+        publish();
+    }
+
+    private void addNode(String path, long size) {
+
+        Node node = new Node(path, size);
+        nodes.put(path, node);
+        trackedBytes += size;
+
+        int separator = path.lastIndexOf(File.separatorChar);
+
+        if(separator > 0) {
+
+            Node parent = nodes.get(path.substring(0, separator));
+
+            if(parent != null) {
+                parent.directories.add(path.substring(separator + 1));
+            }
+        }
+
+        node.observer.startWatching();
+    }
+
+    private void addFile(String path, long size) {
+
+        int separator = path.lastIndexOf(File.separatorChar);
+
+        if(separator > 0) {
+
+            Node parent = nodes.get(path.substring(0, separator));
+
+            if(parent != null) {
+                parent.bytes += size;
+            }
+        }
+
+        trackedBytes += size;
+    }
+
+    private void removeSubtree(String path) {
+
+        String prefix = path + File.separatorChar;
+        Iterator<Map.Entry<String, Node>> iterator = nodes.entrySet().iterator();
+
+        while (iterator.hasNext()) {
+
+            Map.Entry<String, Node> entry = iterator.next();
+            String key = entry.getKey();
+
+            if(key.equals(path) || key.startsWith(prefix)) {
+                Node node = entry.getValue();
+                node.observer.stopWatching();
+                trackedBytes -= node.bytes;
+                iterator.remove();
+            }
+        }
+    }
+
+    private void refresh(String path) {
+
+        Node node = nodes.get(path);
+
+        if(node == null) {
+            return;
+        }
+
+        StorageMetrics.Listener metrics = StorageMetrics.listener;
+        long startNanos = metrics != null ? System.nanoTime() : 0;
+        long statCalls = stat.statCalls;
+        scannedEntries = 0;
+
+        boolean read = path.equals(rootPath) ? stat.readRoot(path) : stat.read(path);
+
+        if(!read || stat.type != EntryStat.TYPE_DIRECTORY) {
+
+            removeSubtree(path);
+
+            if(path.equals(rootPath)) {
+                trackedBytes = 0;
+            }
+            return;
+        }
+
+        long size = stat.size;
+        Set<String> directories = new HashSet<>();
+        DirectoryEntries entries = DirectoryEntries.open(path);
+
+        if(entries != null) {
+
+            try {
+
+                String name;
+
+                while ((name = entries.next()) != null) {
+
+                    if(!stat.read(path + File.separatorChar + name)) {
+                        continue;
+                    }
+
+                    if(stat.type == EntryStat.TYPE_DIRECTORY) {
+
+                        directories.add(name);
+
+                        //New sub directories are counted by their walk
+                        if(node.directories.contains(name)) {
+                            scannedEntries++;
+                        }
+                    }else {
+                        scannedEntries++;
+                        size += stat.size;
+                    }
+                }
+            } finally {
+                entries.close();
+            }
+        }
+
+        trackedBytes += size - node.bytes;
+        node.bytes = size;
+
+        for (String name : node.directories) {
+
+            if(!directories.contains(name)) {
+                removeSubtree(path + File.separatorChar + name);
+            }
+        }
+
+        long scannedBytes = size;
+
+        for (String name : directories) {
+
+            if(!node.directories.contains(name)) {
+
+                String subPath = path + File.separatorChar + name;
+
+                //Entries that arrive while the sub tree is walked are
+                //caught by the observers started during the walk
+                scannedBytes += DirectoryWalker.walk(subPath, stat, nodeVisitor);
+            }
+        }
+
+        node.directories.clear();
+        node.directories.addAll(directories);
+
+        if(metrics != null) {
+            metrics.onScan(path, scannedEntries, scannedBytes, stat.statCalls - statCalls,
+                    System.nanoTime() - startNanos);
+        }
+    }
+
+    private void stopObservers() {
+
+        for (Node node : nodes.values()) {
+            node.observer.stopWatching();
+        }
+
+        nodes.clear();
+    }
+
+    private void publish() {
+
+        long current = Math.max(0, trackedBytes);
+
+        if(current == bytes) {
+            return;
+        }
+
+        bytes = current;
+
+        //Every post delivers the size it was published with
+        final long publishedBytes = current;
+
+        mainHandler.post(new Runnable() {
+            @Override
+            public void run() {
+
+                OnSizeChangedListener currentListener = listener;
+
+                if(currentListener != null) {
+                    currentListener.onSizeChanged(directory, publishedBytes);
+                }
+            }
+        });
+    }
+
+    private void onDirectoryEvent(final String path, int event) {
+
+        if((event & EVENT_IGNORED) != 0 && (event & EVENT_QUEUE_OVERFLOW) == 0) {
+            return;
+        }
+
+        final ScheduledExecutorService service;
+
+        synchronized (this) {
+            service = worker;
+        }
+
+        if(service == null) {
+            return;
+        }
+
+        try {
+
+            if((event & EVENT_QUEUE_OVERFLOW) != 0) {
+
+                service.execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        rescan();
+                    }
+                });
+                return;
+            }
+
+            service.execute(new Runnable() {
+                @Override
+                public void run() {
+
+                    if(!pendingDirectories.add(path)) {
+                        return;
+                    }
+
+                    try {
+                        service.schedule(new Runnable() {
+                            @Override
+                            public void run() {
+
+                                if(pendingDirectories.remove(path)) {
+                                    refresh(path);
+                                    publish();
+                                }
+                            }
+                        }, refreshDelayMillis, TimeUnit.MILLISECONDS);
+                    } catch (RejectedExecutionException e) {
+                        //Tracker was stopped
+                        pendingDirectories.remove(path);
+                    }
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            //Tracker was stopped
+        }
+    }
+
+    private final class Node {
+
+        final Set<String> directories = new HashSet<>();
+        final FileObserver observer;
+        long bytes;
+
+        Node(final String path, long bytes) {
+            this.bytes = bytes;
+            this.observer = new FileObserver(path, OBSERVER_MASK) {
+                @Override
+                public void onEvent(int event, String name) {
+                    onDirectoryEvent(path, event);
+                }
+            };
+        }
+    }
+}
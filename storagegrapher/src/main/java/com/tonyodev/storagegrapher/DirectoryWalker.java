@@ -0,0 +1,172 @@
+package com.tonyodev.storagegrapher;
+
+import java.io.File;
+import java.util.ArrayDeque;
+import java.util.Deque;
+
+/**
+ * Depth first directory walker. Entries are processed as they are
+ * read from the directory and the walker descends into a sub directory
+ * as soon as it is found. Only one open directory per level of the tree
+ * is kept, so memory is bounded by the depth of the tree and not by the
+ * size of the largest directory.
+ */
+final class DirectoryWalker {
+
+    static final int CONTINUE = 0;
+    static final int SKIP_SUBTREE = 1;
+    static final int TERMINATE = 2;
+
+    /**
+     * Receives the entries of a walk. The EntryStat passed to the
+     * visitor is reused and only valid for the duration of the call.
+     * */
+    interface Visitor {
+
+        /**
+         * @return CONTINUE, SKIP_SUBTREE to leave the directory and everything
+         * below it out of the walk, or TERMINATE
+         * */
+        int preVisitDirectory(String path, EntryStat stat);
+
+        /**
+         * @return CONTINUE, SKIP_SUBTREE to leave the file out of the total, or TERMINATE
+         * */
+        int visitFile(String path, EntryStat stat);
+
+        /**
+         * @param bytes size of the directory and everything walked below it
+         * */
+        void postVisitDirectory(String path, long bytes);
+    }
+
+    private DirectoryWalker() {
+    }
+
+    /**
+     * Walks the tree at root. The root is reported to the visitor
+     * like any other entry.
+     *
+     * @return total bytes of the entries walked
+     * */
+    static long walk(String root, EntryStat stat, Visitor visitor) {
+
+        if(!stat.readRoot(root)) {
+            return 0;
+        }
+
+        if(stat.type != EntryStat.TYPE_DIRECTORY) {
+            return visitor.visitFile(root, stat) == CONTINUE ? stat.size : 0;
+        }
+
+        if(visitor.preVisitDirectory(root, stat) != CONTINUE) {
+            return 0;
+        }
+
+        Deque<Frame> frames = new ArrayDeque<>();
+        Frame rootFrame = Frame.open(root, stat.size);
+
+        if(rootFrame == null) {
+            visitor.postVisitDirectory(root, stat.size);
+            return stat.size;
+        }
+
+        frames.push(rootFrame);
+        long total = 0;
+
+        try {
+
+            while (!frames.isEmpty()) {
+
+                Frame frame = frames.peek();
+                String name = frame.entries.next();
+
+                if(name == null) {
+
+                    frames.pop();
+                    frame.entries.close();
+                    visitor.postVisitDirectory(frame.path, frame.bytes);
+
+                    if(frames.isEmpty()) {
+                        total = frame.bytes;
+                    }else {
+                        frames.peek().bytes += frame.bytes;
+                    }
+                    continue;
+                }
+
+                String path = frame.path + File.separatorChar + name;
+
+                if(!stat.read(path)) {
+                    continue;
+                }
+
+                if(stat.type == EntryStat.TYPE_DIRECTORY) {
+
+                    int result = visitor.preVisitDirectory(path, stat);
+
+                    if(result == TERMINATE) {
+                        break;
+                    }
+
+                    if(result == SKIP_SUBTREE) {
+                        continue;
+                    }
+
+                    Frame subFrame = Frame.open(path, stat.size);
+
+                    if(subFrame == null) {
+                        frame.bytes += stat.size;
+                        visitor.postVisitDirectory(path, stat.size);
+                    }else {
+                        frames.push(subFrame);
+                    }
+                }else {
+
+                    int result = visitor.visitFile(path, stat);
+
+                    if(result == TERMINATE) {
+                        break;
+                    }
+
+                    if(result == CONTINUE) {
+                        frame.bytes += stat.size;
+                    }
+                }
+            }
+        } finally {
+
+            while (!frames.isEmpty()) {
+                Frame frame = frames.pop();
+                frame.entries.close();
+                total += frame.bytes;
+            }
+        }
+
+        return total;
+    }
+
+    private static final class Frame {
+
+        final String path;
+        final DirectoryEntries entries;
+        long bytes;
+
+        private Frame(String path, DirectoryEntries entries, long bytes) {
+            this.path = path;
+            this.entries = entries;
+            this.bytes = bytes;
+        }
+
+        static Frame open(String path, long bytes) {
+
+            DirectoryEntries entries = DirectoryEntries.open(path);
+
+            if(entries == null) {
+                return null;
+            }
+
+            return new Frame(path, entries, bytes);
+        }
+    }
+}
@@ -0,0 +1,295 @@
+package com.tonyodev.storagegrapher;
+
+import android.support.annotation.NonNull;
+
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Forecasts how fast Storage Volumes fill up from the samples of a
+ * {@link FreeSpaceSampler}. Each volume keeps an exponentially weighted
+ * least squares fit of free bytes over time. A new sample updates the
+ * fit in constant time and older samples fade out with the configured
+ * half life, so the forecast follows recent usage.
+ *
+ * The fit of a volume starts from the history the sampler already holds:
+ * hour averages older than the minute tier, minute averages older than
+ * the raw tier and then every raw sample. Projections read the fitted
+ * line, not the last sample, so a single noisy sample does not move them.
+ *
+ * Queries only read the current fit and do not call statfs, so they are
+ * cheap enough to be called many times per minute.
+ */
+public final class DiskFillForecaster {
+
+    /**
+     * Default half life of a sample's weight: six hours
+     * */
+    public static final long DEFAULT_HALF_LIFE_MILLIS = 6 * 60 * 60 * 1000L;
+
+    /**
+     * Returned when a volume is not filling up or has too little history
+     * */
+    public static final long UNKNOWN = -1;
+
+    private final FreeSpaceSampler sampler;
+    private final double halfLifeMillis;
+    private final ConcurrentHashMap<String, FillModel> models = new ConcurrentHashMap<>();
+
+    private final FreeSpaceSampler.OnSampleListener sampleListener = new FreeSpaceSampler.OnSampleListener() {
+        @Override
+        public void onSample(@NonNull String path, long timestamp, long freeBytes, long usedBytes) {
+
+            FillModel model = models.get(path);
+
+            if(model == null) {
+                model = new FillModel(timestamp);
+                models.put(path, model);
+            }
+
+            model.add(timestamp, freeBytes, halfLifeMillis);
+        }
+    };
+
+    /**
+     * @param sampler sampler providing the volume samples
+     * */
+    public DiskFillForecaster(@NonNull FreeSpaceSampler sampler) {
+        this(sampler, DEFAULT_HALF_LIFE_MILLIS);
+    }
+
+    /**
+     * @param sampler sampler providing the volume samples
+     * @param halfLifeMillis time after which a sample counts half as much in the fit
+     * */
+    public DiskFillForecaster(@NonNull FreeSpaceSampler sampler, long halfLifeMillis) {
+
+        if(sampler == null) {
+            throw new NullPointerException("Sampler cannot be null");
+        }
+
+        if(halfLifeMillis <= 0) {
+            throw new IllegalArgumentException("Half life must be greater than 0");
+        }
+
+        this.sampler = sampler;
+        this.halfLifeMillis = halfLifeMillis;
+
+        for (VolumeHistory history : sampler.getHistories()) {
+            seed(history);
+        }
+
+        sampler.addOnSampleListener(sampleListener);
+    }
+
+    /**
+     * Stops receiving samples from the sampler
+     * */
+    public void release() {
+        sampler.removeOnSampleListener(sampleListener);
+    }
+
+    /**
+     * @param path Storage Volume Path
+     * @return bytes per second the volume is filling at. Negative when space is
+     * being freed. 0 when there is not enough history.
+     * */
+    public double getFillRateBytesPerSecond(@NonNull String path) {
+
+        FillModel model = models.get(path);
+
+        if(model == null) {
+            return 0;
+        }
+
+        synchronized (model) {
+            return -model.getSlopePerMilli() * 1000;
+        }
+    }
+
+    /**
+     * @param path Storage Volume Path
+     * @return projected milliseconds until the volume is full, or UNKNOWN
+     * */
+    public long getTimeToFullMillis(@NonNull String path) {
+        return getTimeToFullMillis(path, System.currentTimeMillis());
+    }
+
+    long getTimeToFullMillis(String path, long now) {
+
+        FillModel model = models.get(path);
+
+        if(model == null) {
+            return UNKNOWN;
+        }
+
+        synchronized (model) {
+
+            double slope = model.getSlopePerMilli();
+
+            if(model.count < 2 || slope >= 0) {
+                return UNKNOWN;
+            }
+
+            double free = model.getFittedFreeBytes(now, slope);
+            return free <= 0 ? 0 : (long) (free / -slope);
+        }
+    }
+
+    /**
+     * @param path Storage Volume Path
+     * @param timestamp time in milliseconds
+     * @return projected free bytes at the time, or UNKNOWN if the volume has no samples
+     * */
+    public long getProjectedFreeBytes(@NonNull String path, long timestamp) {
+
+        FillModel model = models.get(path);
+
+        if(model == null) {
+            return UNKNOWN;
+        }
+
+        synchronized (model) {
+
+            if(model.count < 2) {
+                return model.lastFreeBytes;
+            }
+
+            double projected = model.getFittedFreeBytes(timestamp, model.getSlopePerMilli());
+            return Math.max(0, (long) projected);
+        }
+    }
+
+    /**
+     * Checks if an amount of data fits on a volume now and is still
+     * projected to fit at the passed time.
+     *
+     * @param path Storage Volume Path
+     * @param bytes bytes to store
+     * @param timestamp time in milliseconds the data has to fit until
+     * @return true if the data fits
+     * */
+    public boolean willFit(@NonNull String path, long bytes, long timestamp) {
+
+        long projected = getProjectedFreeBytes(path, timestamp);
+
+        if(projected == UNKNOWN) {
+            return false;
+        }
+
+        FillModel model = models.get(path);
+        long free;
+
+        synchronized (model) {
+            free = model.lastFreeBytes;
+        }
+
+        return bytes <= free && bytes <= projected;
+    }
+
+    private void seed(VolumeHistory history) {
+
+        int tiers = VolumeHistory.TIER_HOUR + 1;
+        long[][] timestamps = new long[tiers][];
+        long[][] free = new long[tiers][];
+        int[] counts = new int[tiers];
+
+        for (int tier = 0; tier < tiers; tier++) {
+            int capacity = history.getSampleCount(tier);
+            timestamps[tier] = new long[capacity];
+            free[tier] = new long[capacity];
+            counts[tier] = history.read(tier, timestamps[tier], free[tier], new long[capacity]);
+        }
+
+        //A coarser tier only adds the samples older than those of the finer tiers
+        long[] ends = new long[tiers];
+        ends[VolumeHistory.TIER_RAW] = Long.MAX_VALUE;
+
+        for (int tier = 1; tier < tiers; tier++) {
+            ends[tier] = counts[tier - 1] > 0 ? Math.min(ends[tier - 1], timestamps[tier - 1][0]) : ends[tier - 1];
+        }
+
+        FillModel model = null;
+
+        for (int tier = tiers - 1; tier >= 0; tier--) {
+
+            for (int i = 0; i < counts[tier] && timestamps[tier][i] < ends[tier]; i++) {
+
+                if(model == null) {
+                    model = new FillModel(timestamps[tier][i]);
+                }
+
+                model.add(timestamps[tier][i], free[tier][i], halfLifeMillis);
+            }
+        }
+
+        if(model != null) {
+            models.put(history.getPath(), model);
+        }
+    }
+
+    private static final class FillModel {
+
+        //Times are stored relative to the first sample to keep the sums precise
+        final long origin;
+
+        long count;
+        long lastTimestamp;
+        long lastFreeBytes;
+
+        double weight;
+        double sumTime;
+        double sumFree;
+        double sumTimeTime;
+        double sumTimeFree;
+
+        FillModel(long origin) {
+            this.origin = origin;
+        }
+
+        synchronized void add(long timestamp, long freeBytes, double halfLifeMillis) {
+
+            if(count > 0 && timestamp <= lastTimestamp) {
+                //Already part of the fit
+                return;
+            }
+
+            if(count > 0) {
+
+                double decay = Math.pow(0.5, (timestamp - lastTimestamp) / halfLifeMillis);
+                weight *= decay;
+                sumTime *= decay;
+                sumFree *= decay;
+                sumTimeTime *= decay;
+                sumTimeFree *= decay;
+            }
+
+            double time = timestamp - origin;
+            weight += 1;
+            sumTime += time;
+            sumFree += freeBytes;
+            sumTimeTime += time * time;
+            sumTimeFree += time * freeBytes;
+
+            count++;
+            lastTimestamp = timestamp;
+            lastFreeBytes = freeBytes;
+        }
+
+        //Change of free bytes per millisecond
+        double getSlopePerMilli() {
+
+            double denominator = weight * sumTimeTime - sumTime * sumTime;
+
+            if(count < 2 || denominator <= 0) {
+                return 0;
+            }
+
+            return (weight * sumTimeFree - sumTime * sumFree) / denominator;
+        }
+
+        //Free bytes on the fitted line at a time. The line passes through the weighted means
+        double getFittedFreeBytes(long timestamp, double slope) {
+            return sumFree / weight + slope * ((timestamp - origin) - sumTime / weight);
+        }
+    }
+}
@@ -0,0 +1,119 @@
+package com.tonyodev.storagegrapher;
+
+/**
+ * Reusable holder for the attributes of a single file system entry.
+ * Attributes are read by the {@link StorageBackend} that was the default
+ * when the holder was created.
+ */
+public final class EntryStat {
+
+    public static final int TYPE_NONE = 0;
+    public static final int TYPE_FILE = 1;
+    public static final int TYPE_DIRECTORY = 2;
+    public static final int TYPE_SYMLINK = 3;
+    public static final int TYPE_OTHER = 4;
+
+    /** number of system calls the old exists/length/isDirectory loop made per entry*/
+    static final int LEGACY_CALLS_PER_ENTRY = 3;
+
+    private final StorageBackend backend;
+
+    int type = TYPE_NONE;
+    long size;
+    long device;
+    long inode;
+    long links;
+    long lastModified;
+
+    /** total number of stat system calls issued by this holder*/
+    long statCalls;
+
+    /** when true symbolic links are resolved to the entry they point to*/
+    boolean followLinks = false;
+
+    EntryStat() {
+        this(StorageBackend.getDefault());
+    }
+
+    EntryStat(StorageBackend backend) {
+        this.backend = backend;
+    }
+
+    /**
+     * Reads the attributes of the entry at path. Symbolic links are
+     * only followed when followLinks is set. Below Lollipop links to
+     * files are always followed, see {@link AndroidStorageBackend}.
+     *
+     * @param path entry path
+     * @return true if the entry exists
+     * */
+    boolean read(String path) {
+        return backend.readEntry(path, this);
+    }
+
+    /**
+     * Reads the attributes of the root of a walk. The root is always
+     * resolved like File resolves it, so a root reached through a link
+     * like /sdcard is measured as the directory it points to. Only the
+     * entries below the root honor followLinks.
+     *
+     * @param path root path
+     * @return true if the entry exists
+     * */
+    boolean readRoot(String path) {
+
+        boolean followLinks = this.followLinks;
+        this.followLinks = true;
+
+        try {
+            return backend.readEntry(path, this);
+        } finally {
+            this.followLinks = followLinks;
+        }
+    }
+
+    /**
+     * @return true if symbolic links should be resolved to the entry they point to
+     * */
+    public boolean isFollowingLinks() {
+        return followLinks;
+    }
+
+    /**
+     * Sets the attributes of the entry. Called by backends.
+     *
+     * @param type one of the TYPE constants
+     * @param size entry size in bytes
+     * @param device device the entry is on or 0 if unknown
+     * @param inode inode of the entry or 0 if unknown
+     * @param links number of hard links to the entry
+     * @param lastModified last modified time in milliseconds or 0 if unknown
+     * */
+    public void set(int type, long size, long device, long inode, long links, long lastModified) {
+        this.type = type;
+        this.size = size;
+        this.device = device;
+        this.inode = inode;
+        this.links = links;
+        this.lastModified = lastModified;
+    }
+
+    /**
+     * @param calls number of system calls a backend made to read an entry
+     * */
+    public void addStatCalls(int calls) {
+        statCalls += calls;
+    }
+
+    /**
+     * Resets the attributes to those of a missing entry
+     * */
+    public void clear() {
+        type = TYPE_NONE;
+        size = 0;
+        device = 0;
+        inode = 0;
+        links = 0;
+        lastModified = 0;
+    }
+}
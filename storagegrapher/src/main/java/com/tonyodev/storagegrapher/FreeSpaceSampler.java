@@ -0,0 +1,394 @@
+package com.tonyodev.storagegrapher;
+
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Samples the free and used space of Storage Volumes on a background
+ * thread and records them into a {@link VolumeHistory} per volume. The
+ * sampling path reuses one {@link VolumeStat} per volume, which keeps its
+ * StatFs on devices, and writes into primitive ring buffers so no objects
+ * are created by the sampler itself.
+ *
+ * With the default capacities a volume keeps one hour of raw samples
+ * at a one second interval, one day of minute averages and one week of
+ * hour averages in about 125KB.
+ */
+public final class FreeSpaceSampler {
+
+    /**
+     * Listener notified on the sampling thread after every recorded sample.
+     * Exceptions thrown by a listener are ignored
+     * */
+    public interface OnSampleListener {
+        void onSample(@NonNull String path, long timestamp, long freeBytes, long usedBytes);
+    }
+
+    /**
+     * Listener notified on the calling thread after a volume was removed
+     * */
+    public interface OnVolumeRemovedListener {
+        void onVolumeRemoved(@NonNull String path);
+    }
+
+    public static final int DEFAULT_RAW_CAPACITY = 3600;
+    public static final int DEFAULT_MINUTE_CAPACITY = 24 * 60;
+    public static final int DEFAULT_HOUR_CAPACITY = 7 * 24;
+
+    private final long intervalMillis;
+    private final int rawCapacity;
+    private final int minuteCapacity;
+    private final int hourCapacity;
+
+    //Copied on write so the sampling thread can iterate without an iterator
+    private volatile Volume[] volumes = new Volume[0];
+    private volatile OnSampleListener[] listeners = new OnSampleListener[0];
+    private volatile OnVolumeRemovedListener[] removedListeners = new OnVolumeRemovedListener[0];
+
+    private ScheduledExecutorService executor;
+
+    private final Runnable sampleRunnable = new Runnable() {
+        @Override
+        public void run() {
+
+            try {
+                sample();
+            } catch (Throwable throwable) {
+                //A scheduled task that throws is never run again, which would stop sampling for every owner
+            }
+        }
+    };
+
+    /**
+     * @param intervalMillis sampling interval in milliseconds
+     * */
+    public FreeSpaceSampler(long intervalMillis) {
+        this(intervalMillis, DEFAULT_RAW_CAPACITY, DEFAULT_MINUTE_CAPACITY, DEFAULT_HOUR_CAPACITY);
+    }
+
+    /**
+     * @param intervalMillis sampling interval in milliseconds
+     * @param rawCapacity number of raw samples kept per volume
+     * @param minuteCapacity number of minute averages kept per volume
+     * @param hourCapacity number of hour averages kept per volume
+     * */
+    public FreeSpaceSampler(long intervalMillis, int rawCapacity, int minuteCapacity, int hourCapacity) {
+
+        if(intervalMillis <= 0) {
+            throw new IllegalArgumentException("Interval must be greater than 0");
+        }
+
+        if(rawCapacity < 0 || minuteCapacity < 0 || hourCapacity < 0) {
+            throw new IllegalArgumentException("Capacity cannot be negative");
+        }
+
+        this.intervalMillis = intervalMillis;
+        this.rawCapacity = rawCapacity;
+        this.minuteCapacity = minuteCapacity;
+        this.hourCapacity = hourCapacity;
+    }
+
+    /**
+     * Starts sampling a volume, or takes another reference to it if it is
+     * already sampled. Owners that share the sampler release their reference
+     * with {@link #releaseVolume(String)}, so the volume keeps being sampled
+     * until its last owner is done with it.
+     *
+     * @param path Storage Volume Path
+     * @return history of the volume
+     * */
+    @NonNull
+    public synchronized VolumeHistory addVolume(@NonNull String path) {
+
+        if(path == null) {
+            throw new NullPointerException("Path cannot be null");
+        }
+
+        Volume[] current = volumes;
+
+        for (Volume volume : current) {
+
+            if(volume.history.getPath().equals(path)) {
+                volume.references++;
+                return volume.history;
+            }
+        }
+
+        Volume[] updated = new Volume[current.length + 1];
+        System.arraycopy(current, 0, updated, 0, current.length);
+        updated[current.length] = new Volume(new VolumeHistory(path, rawCapacity, minuteCapacity, hourCapacity));
+        volumes = updated;
+
+        return updated[current.length].history;
+    }
+
+    /**
+     * Releases a reference taken by {@link #addVolume(String)}. The volume
+     * is removed, and volume removed listeners are notified, when its last
+     * reference is released.
+     *
+     * @param path Storage Volume Path
+     * */
+    public void releaseVolume(@NonNull String path) {
+
+        synchronized (this) {
+
+            int index = indexOf(path);
+
+            if(index == -1 || --volumes[index].references > 0) {
+                return;
+            }
+
+            removeAt(index);
+        }
+
+        notifyVolumeRemoved(path);
+    }
+
+    /**
+     * Stops sampling a volume and drops its history, whatever references
+     * are held on it. Volume removed listeners are notified if the volume
+     * was sampled.
+     *
+     * @param path Storage Volume Path
+     * */
+    public void removeVolume(@NonNull String path) {
+
+        synchronized (this) {
+
+            int index = indexOf(path);
+
+            if(index == -1) {
+                return;
+            }
+
+            removeAt(index);
+        }
+
+        notifyVolumeRemoved(path);
+    }
+
+    private int indexOf(String path) {
+
+        Volume[] current = volumes;
+
+        for (int i = 0; i < current.length; i++) {
+
+            if(current[i].history.getPath().equals(path)) {
+                return i;
+            }
+        }
+
+        return -1;
+    }
+
+    private void removeAt(int index) {
+
+        Volume[] current = volumes;
+        Volume[] updated = new Volume[current.length - 1];
+        System.arraycopy(current, 0, updated, 0, index);
+        System.arraycopy(current, index + 1, updated, index, current.length - index - 1);
+        volumes = updated;
+    }
+
+    //Called without the lock so listeners can call back into the sampler
+    private void notifyVolumeRemoved(String path) {
+
+        for (OnVolumeRemovedListener listener : removedListeners) {
+            listener.onVolumeRemoved(path);
+        }
+    }
+
+    /**
+     * @param path Storage Volume Path
+     * @return history of the volume or null if the volume is not sampled
+     * */
+    @Nullable
+    public VolumeHistory getHistory(@NonNull String path) {
+
+        for (Volume volume : volumes) {
+
+            if(volume.history.getPath().equals(path)) {
+                return volume.history;
+            }
+        }
+
+        return null;
+    }
+
+    /**
+     * @return histories of the sampled volumes
+     * */
+    VolumeHistory[] getHistories() {
+
+        Volume[] current = volumes;
+        VolumeHistory[] histories = new VolumeHistory[current.length];
+
+        for (int i = 0; i < current.length; i++) {
+            histories[i] = current[i].history;
+        }
+
+        return histories;
+    }
+
+    /**
+     * @param listener listener notified on the sampling thread
+     * */
+    public synchronized void addOnSampleListener(@NonNull OnSampleListener listener) {
+
+        if(listener == null) {
+            throw new NullPointerException("Listener cannot be null");
+        }
+
+        OnSampleListener[] current = listeners;
+        OnSampleListener[] updated = new OnSampleListener[current.length + 1];
+        System.arraycopy(current, 0, updated, 0, current.length);
+        updated[current.length] = listener;
+        listeners = updated;
+    }
+
+    /**
+     * @param listener listener to remove
+     * */
+    public synchronized void removeOnSampleListener(@NonNull OnSampleListener listener) {
+
+        OnSampleListener[] current = listeners;
+
+        for (int i = 0; i < current.length; i++) {
+
+            if(current[i] == listener) {
+                OnSampleListener[] updated = new OnSampleListener[current.length - 1];
+                System.arraycopy(current, 0, updated, 0, i);
+                System.arraycopy(current, i + 1, updated, i, current.length - i - 1);
+                listeners = updated;
+                return;
+            }
+        }
+    }
+
+    /**
+     * @param listener listener notified when a volume is removed
+     * */
+    public synchronized void addOnVolumeRemovedListener(@NonNull OnVolumeRemovedListener listener) {
+
+        if(listener == null) {
+            throw new NullPointerException("Listener cannot be null");
+        }
+
+        OnVolumeRemovedListener[] current = removedListeners;
+        OnVolumeRemovedListener[] updated = new OnVolumeRemovedListener[current.length + 1];
+        System.arraycopy(current, 0, updated, 0, current.length);
+        updated[current.length] = listener;
+        removedListeners = updated;
+    }
+
+    /**
+     * @param listener listener to remove
+     * */
+    public synchronized void removeOnVolumeRemovedListener(@NonNull OnVolumeRemovedListener listener) {
+
+        OnVolumeRemovedListener[] current = removedListeners;
+
+        for (int i = 0; i < current.length; i++) {
+
+            if(current[i] == listener) {
+                OnVolumeRemovedListener[] updated = new OnVolumeRemovedListener[current.length - 1];
+                System.arraycopy(current, 0, updated, 0, i);
+                System.arraycopy(current, i + 1, updated, i, current.length - i - 1);
+                removedListeners = updated;
+                return;
+            }
+        }
+    }
+
+    /**
+     * @return sampling interval in milliseconds
+     * */
+    public long getIntervalMillis() {
+        return intervalMillis;
+    }
+
+    /**
+     * Starts sampling on a background thread
+     * */
+    public synchronized void start() {
+
+        if(executor != null) {
+            return;
+        }
+
+        executor = Executors.newSingleThreadScheduledExecutor();
+        executor.scheduleAtFixedRate(sampleRunnable, 0, intervalMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Stops sampling. Recorded history is kept.
+     * */
+    public synchronized void stop() {
+
+        if(executor != null) {
+            executor.shutdown();
+            executor = null;
+        }
+    }
+
+    //Package private so tests can take a sample without the background thread
+    void sample() {
+
+        Volume[] current = volumes;
+        long timestamp = System.currentTimeMillis();
+
+        for (int i = 0; i < current.length; i++) {
+
+            Volume volume = current[i];
+
+            if(!volume.sample(timestamp)) {
+                continue;
+            }
+
+            OnSampleListener[] currentListeners = listeners;
+
+            for (int x = 0; x < currentListeners.length; x++) {
+
+                try {
+                    currentListeners[x].onSample(volume.history.getPath(), timestamp,
+                            volume.lastFreeBytes, volume.lastUsedBytes);
+                } catch (RuntimeException e) {
+                    //A failing listener does not keep the sample from the others
+                }
+            }
+        }
+    }
+
+    private static final class Volume {
+
+        final VolumeHistory history;
+        final VolumeStat stat = new VolumeStat();
+
+        //Owners sharing the volume. Guarded by the sampler
+        int references = 1;
+        long lastFreeBytes;
+        long lastUsedBytes;
+
+        Volume(VolumeHistory history) {
+            this.history = history;
+        }
+
+        boolean sample(long timestamp) {
+
+            if(!stat.read(history.getPath())) {
+                //Volume is not mounted. Skip this sample
+                return false;
+            }
+
+            lastFreeBytes = stat.freeBytes;
+            lastUsedBytes = stat.getUsedBytes();
+            history.record(timestamp, lastFreeBytes, lastUsedBytes);
+            return true;
+        }
+    }
+}
@@ -0,0 +1,296 @@
+package com.tonyodev.storagegrapher;
+
+import android.support.annotation.NonNull;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Backend that serves a file system tree held in memory. Used to run the
+ * scanning and volume code against large synthetic trees in load tests
+ * without creating them on disk. Directories report a size of 0 so the
+ * scanned size of a tree is the sum of the sizes of its files. Every entry
+ * gets its own inode and the device of the volume it is on.
+ *
+ * The tree can be changed while it is being read. A directory listing is
+ * a copy of the directory at the time it was opened.
+ */
+public final class InMemoryStorageBackend extends StorageBackend {
+
+    private static final String DOUBLE_SEPARATOR = File.separator + File.separator;
+
+    private final Map<String, Node> nodes = new ConcurrentHashMap<>();
+    private final Map<String, long[]> volumes = new ConcurrentHashMap<>();
+    private long nextInode = 1;
+    private long nextDevice = 1;
+
+    /**
+     * Adds a directory and any missing parent directories
+     *
+     * @param path directory path
+     * */
+    public synchronized void addDirectory(@NonNull String path) {
+        getOrCreateDirectory(normalize(path));
+    }
+
+    /**
+     * Adds or replaces a file. Missing parent directories are added.
+     *
+     * @param path file path
+     * @param bytes file size
+     * */
+    public synchronized void addFile(@NonNull String path, long bytes) {
+
+        String filePath = normalize(path);
+        Node existing = nodes.get(filePath);
+
+        if(existing != null && existing.directory) {
+            throw new IllegalArgumentException("Path is a directory: " + path);
+        }
+
+        if(existing == null) {
+            Node parent = getOrCreateDirectory(getParent(filePath));
+            nodes.put(filePath, new Node(false, bytes, nextInode++));
+            parent.addChild(getName(filePath));
+        }else {
+            existing.size = bytes;
+            existing.lastModified = System.currentTimeMillis();
+        }
+    }
+
+    /**
+     * Removes an entry and everything below it
+     *
+     * @param path entry path
+     * */
+    public synchronized void remove(@NonNull String path) {
+
+        String entryPath = normalize(path);
+        Node node = nodes.remove(entryPath);
+
+        if(node == null) {
+            return;
+        }
+
+        Node parent = nodes.get(getParent(entryPath));
+
+        if(parent != null) {
+            parent.removeChild(getName(entryPath));
+        }
+
+        String prefix = entryPath.equals(File.separator) ? entryPath : entryPath + File.separatorChar;
+
+        for (String key : nodes.keySet()) {
+
+            if(key.startsWith(prefix)) {
+                nodes.remove(key);
+            }
+        }
+    }
+
+    /**
+     * Adds or updates a volume. Paths are on the volume with the longest
+     * path that is a prefix of them.
+     *
+     * @param path volume path
+     * @param totalBytes volume size
+     * @param freeBytes free space of the volume
+     * */
+    public synchronized void setVolume(@NonNull String path, long totalBytes, long freeBytes) {
+
+        if(totalBytes < 0 || freeBytes < 0 || freeBytes > totalBytes) {
+            throw new IllegalArgumentException("Invalid volume size");
+        }
+
+        long[] current = volumes.get(normalize(path));
+        long device = current != null ? current[0] : nextDevice++;
+
+        volumes.put(normalize(path), new long[]{device, totalBytes, freeBytes});
+    }
+
+    /**
+     * @param path volume path
+     * */
+    public synchronized void removeVolume(@NonNull String path) {
+        volumes.remove(normalize(path));
+    }
+
+    @Override
+    protected boolean readEntry(@NonNull String path, @NonNull EntryStat stat) {
+
+        stat.addStatCalls(1);
+
+        String entryPath = normalize(path);
+        Node node = nodes.get(entryPath);
+
+        if(node == null) {
+            stat.clear();
+            return false;
+        }
+
+        long[] volume = findVolume(entryPath);
+
+        stat.set(node.directory ? EntryStat.TYPE_DIRECTORY : EntryStat.TYPE_FILE, node.size,
+                volume != null ? volume[0] : 0, node.inode, 1, node.lastModified);
+        return true;
+    }
+
+    @Override
+    protected DirectoryEntries openDirectory(@NonNull String directory) {
+
+        Node node = nodes.get(normalize(directory));
+
+        if(node == null || !node.directory) {
+            return null;
+        }
+
+        return DirectoryEntries.of(node.getChildren());
+    }
+
+    @Override
+    protected boolean readVolume(@NonNull String path, @NonNull VolumeStat stat) {
+
+        long[] volume = findVolume(normalize(path));
+
+        if(volume == null) {
+            return false;
+        }
+
+        stat.set(volume[1], volume[2]);
+        return true;
+    }
+
+    private long[] findVolume(String path) {
+
+        String current = path;
+
+        while (current != null) {
+
+            long[] volume = volumes.get(current);
+
+            if(volume != null) {
+                return volume;
+            }
+
+            current = current.isEmpty() || current.equals(File.separator) ? null : getParent(current);
+        }
+
+        return null;
+    }
+
+    private Node getOrCreateDirectory(String path) {
+
+        Node node = nodes.get(path);
+
+        if(node != null) {
+
+            if(!node.directory) {
+                throw new IllegalArgumentException("Path is a file: " + path);
+            }
+
+            return node;
+        }
+
+        node = new Node(true, 0, nextInode++);
+        nodes.put(path, node);
+
+        if(!path.equals(File.separator) && !path.isEmpty()) {
+            getOrCreateDirectory(getParent(path)).addChild(getName(path));
+        }
+
+        return node;
+    }
+
+    private static String normalize(String path) {
+
+        if(path == null) {
+            throw new NullPointerException("Path cannot be null");
+        }
+
+        //Callers join child names to the directory with a separator, so a
+        //child of the root arrives as //name. Runs of separators are collapsed
+        //and a trailing separator is dropped
+        if(path.indexOf(DOUBLE_SEPARATOR) == -1
+                && (path.length() <= 1 || path.charAt(path.length() - 1) != File.separatorChar)) {
+            return path;
+        }
+
+        StringBuilder builder = new StringBuilder(path.length());
+
+        for (int i = 0; i < path.length(); i++) {
+
+            char c = path.charAt(i);
+
+            if(c != File.separatorChar || builder.length() == 0
+                    || builder.charAt(builder.length() - 1) != File.separatorChar) {
+                builder.append(c);
+            }
+        }
+
+        if(builder.length() > 1 && builder.charAt(builder.length() - 1) == File.separatorChar) {
+            builder.setLength(builder.length() - 1);
+        }
+
+        return builder.toString();
+    }
+
+    private static String getParent(String path) {
+
+        int separator = path.lastIndexOf(File.separatorChar);
+
+        if(separator > 0) {
+            return path.substring(0, separator);
+        }
+
+        return separator == 0 ? File.separator : "";
+    }
+
+    private static String getName(String path) {
+        return path.substring(path.lastIndexOf(File.separatorChar) + 1);
+    }
+
+    private static final class Node {
+
+        final boolean directory;
+        final long inode;
+        volatile long size;
+        volatile long lastModified = System.currentTimeMillis();
+        private List<String> children;
+
+        Node(boolean directory, long size, long inode) {
+            this.directory = directory;
+            this.size = size;
+            this.inode = inode;
+        }
+
+        synchronized void addChild(String name) {
+
+            if(children == null) {
+                children = new ArrayList<>();
+            }
+
+            children.add(name);
+            lastModified = System.currentTimeMillis();
+        }
+
+        synchronized void removeChild(String name) {
+
+            if(children != null) {
+                children.remove(name);
+                lastModified = System.currentTimeMillis();
+            }
+        }
+
+        synchronized String[] getChildren() {
+
+            if(children == null) {
+                return new String[0];
+            }
+
+            return children.toArray(new String[children.size()]);
+        }
+    }
+}
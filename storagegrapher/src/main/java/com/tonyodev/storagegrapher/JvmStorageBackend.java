@@ -0,0 +1,129 @@
+package com.tonyodev.storagegrapher;
+
+import android.annotation.TargetApi;
+import android.os.Build;
+import android.support.annotation.NonNull;
+
+import java.io.IOException;
+import java.nio.file.FileStore;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.util.Map;
+
+/**
+ * Backend for plain Java virtual machines built on java.nio.file. Entry
+ * attributes are read with one attribute read per entry. The unix view is
+ * used where available so the device, inode and link count are known and
+ * the cycle and hard link checks work. Volumes are read from the FileStore
+ * of a path.
+ */
+@TargetApi(Build.VERSION_CODES.O)
+public final class JvmStorageBackend extends StorageBackend {
+
+    private static final String UNIX_ATTRIBUTES =
+            "unix:size,lastModifiedTime,isDirectory,isRegularFile,isSymbolicLink,dev,ino,nlink";
+
+    private static final LinkOption[] NO_FOLLOW_LINKS = {LinkOption.NOFOLLOW_LINKS};
+    private static final LinkOption[] FOLLOW_LINKS = {};
+
+    private volatile boolean unixView = true;
+
+    @Override
+    protected boolean readEntry(@NonNull String path, @NonNull EntryStat stat) {
+
+        stat.statCalls++;
+
+        LinkOption[] options = stat.followLinks ? FOLLOW_LINKS : NO_FOLLOW_LINKS;
+
+        try {
+
+            Path entry = Paths.get(path);
+
+            if(unixView) {
+
+                try {
+                    readUnixAttributes(Files.readAttributes(entry, UNIX_ATTRIBUTES, options), stat);
+                    return true;
+                } catch (UnsupportedOperationException | IllegalArgumentException e) {
+                    //File system has no unix view. Use the basic attributes from now on
+                    unixView = false;
+                }
+            }
+
+            readBasicAttributes(Files.readAttributes(entry, BasicFileAttributes.class, options), stat);
+            return true;
+        } catch (IOException | RuntimeException e) {
+            stat.clear();
+            return false;
+        }
+    }
+
+    @Override
+    protected DirectoryEntries openDirectory(@NonNull String directory) {
+        return DirectoryEntries.StreamEntries.open(directory);
+    }
+
+    @Override
+    protected boolean readVolume(@NonNull String path, @NonNull VolumeStat stat) {
+
+        try {
+
+            FileStore store = path.equals(stat.handlePath) ? (FileStore) stat.handle : null;
+
+            if(store == null) {
+                store = Files.getFileStore(Paths.get(path));
+            }
+
+            //FileStore reads the current statistics on every call
+            stat.totalBytes = store.getTotalSpace();
+            stat.freeBytes = store.getUsableSpace();
+            stat.handle = store;
+            stat.handlePath = path;
+            return true;
+        } catch (IOException | RuntimeException e) {
+            return false;
+        }
+    }
+
+    private static void readUnixAttributes(Map<String, Object> attributes, EntryStat stat) {
+
+        if(Boolean.TRUE.equals(attributes.get("isDirectory"))) {
+            stat.type = EntryStat.TYPE_DIRECTORY;
+        }else if(Boolean.TRUE.equals(attributes.get("isRegularFile"))) {
+            stat.type = EntryStat.TYPE_FILE;
+        }else if(Boolean.TRUE.equals(attributes.get("isSymbolicLink"))) {
+            stat.type = EntryStat.TYPE_SYMLINK;
+        }else {
+            stat.type = EntryStat.TYPE_OTHER;
+        }
+
+        stat.size = ((Number) attributes.get("size")).longValue();
+        stat.device = ((Number) attributes.get("dev")).longValue();
+        stat.inode = ((Number) attributes.get("ino")).longValue();
+        stat.links = ((Number) attributes.get("nlink")).longValue();
+        stat.lastModified = ((FileTime) attributes.get("lastModifiedTime")).toMillis();
+    }
+
+    private static void readBasicAttributes(BasicFileAttributes attributes, EntryStat stat) {
+
+        if(attributes.isDirectory()) {
+            stat.type = EntryStat.TYPE_DIRECTORY;
+        }else if(attributes.isRegularFile()) {
+            stat.type = EntryStat.TYPE_FILE;
+        }else if(attributes.isSymbolicLink()) {
+            stat.type = EntryStat.TYPE_SYMLINK;
+        }else {
+            stat.type = EntryStat.TYPE_OTHER;
+        }
+
+        stat.size = attributes.size();
+        stat.device = 0;
+        stat.inode = 0;
+        stat.links = 1;
+        stat.lastModified = attributes.lastModifiedTime().toMillis();
+    }
+}
@@ -0,0 +1,108 @@
+package com.tonyodev.storagegrapher;
+
+import java.util.Arrays;
+
+/**
+ * Open addressing hash set of (long, long) pairs backed by a single
+ * long array. Used to remember device and inode pairs without boxing.
+ * A pair with a second value of 0 is stored as 1, inode 0 is never
+ * used by a real file.
+ */
+final class LongPairSet {
+
+    private static final float LOAD_FACTOR = 0.5f;
+
+    private long[] pairs;
+    private int size;
+
+    LongPairSet() {
+        this(64);
+    }
+
+    LongPairSet(int initialCapacity) {
+
+        int capacity = 16;
+
+        while (capacity < initialCapacity) {
+            capacity <<= 1;
+        }
+
+        pairs = new long[capacity * 2];
+    }
+
+    /**
+     * @return true if the pair was not in the set
+     * */
+    boolean add(long first, long second) {
+
+        if(second == 0) {
+            second = 1;
+        }
+
+        if(size + 1 > (pairs.length / 2) * LOAD_FACTOR) {
+            grow();
+        }
+
+        if(insert(pairs, first, second)) {
+            size++;
+            return true;
+        }
+
+        return false;
+    }
+
+    int size() {
+        return size;
+    }
+
+    void clear() {
+        Arrays.fill(pairs, 0);
+        size = 0;
+    }
+
+    private static boolean insert(long[] table, long first, long second) {
+
+        int mask = (table.length / 2) - 1;
+        int index = hash(first, second) & mask;
+
+        while (true) {
+
+            int slot = index * 2;
+
+            if(table[slot + 1] == 0) {
+                table[slot] = first;
+                table[slot + 1] = second;
+                return true;
+            }
+
+            if(table[slot] == first && table[slot + 1] == second) {
+                return false;
+            }
+
+            index = (index + 1) & mask;
+        }
+    }
+
+    private void grow() {
+
+        long[] table = new long[pairs.length * 2];
+
+        for (int slot = 0; slot < pairs.length; slot += 2) {
+
+            if(pairs[slot + 1] != 0) {
+                insert(table, pairs[slot], pairs[slot + 1]);
+            }
+        }
+
+        pairs = table;
+    }
+
+    private static int hash(long first, long second) {
+
+        long h = first * 0x9E3779B97F4A7C15L + second;
+        h ^= (h >>> 33);
+        h *= 0xFF51AFD7ED558CCDL;
+        h ^= (h >>> 33);
+        return (int) h;
+    }
+}
@@ -0,0 +1,301 @@
+package com.tonyodev.storagegrapher;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.support.annotation.NonNull;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Notifies listeners when the free space of a Storage Volume drops below
+ * a threshold. All thresholds are served by one shared poller that calls
+ * statfs once per volume per poll. The poll interval shortens as the free
+ * space of any volume gets close to one of its thresholds and lengthens
+ * when every volume is far from them.
+ *
+ * A volume is reported low when its free space drops below the threshold
+ * and only reported recovered once it rises above the threshold plus the
+ * hysteresis margin, so listeners do not flap around the threshold.
+ */
+public final class LowSpaceMonitor {
+
+    /**
+     * Listener notified on the main thread
+     * */
+    public interface OnLowSpaceListener {
+
+        /**
+         * Called when the free space drops below the threshold
+         * */
+        void onLowSpace(@NonNull StorageVolume volume);
+
+        /**
+         * Called when the free space rises above the threshold plus the hysteresis margin
+         * */
+        void onSpaceRecovered(@NonNull StorageVolume volume);
+    }
+
+    public static final long DEFAULT_MIN_INTERVAL_MILLIS = 1000;
+    public static final long DEFAULT_MAX_INTERVAL_MILLIS = 60 * 1000;
+    public static final float DEFAULT_HYSTERESIS = 0.1f;
+
+    //Distance to a threshold, as a fraction of the volume size, below which the minimum interval is used
+    private static final double NEAR_THRESHOLD_FRACTION = 0.05;
+
+    private static volatile LowSpaceMonitor instance;
+
+    private final long minIntervalMillis;
+    private final long maxIntervalMillis;
+    private final float hysteresis;
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+    private final Map<String, List<Registration>> registrations = new HashMap<>();
+
+    private ScheduledExecutorService executor;
+    private ScheduledFuture<?> pendingPoll;
+
+    private final Runnable pollRunnable = new Runnable() {
+        @Override
+        public void run() {
+            poll();
+        }
+    };
+
+    /**
+     * @param minIntervalMillis poll interval used close to a threshold
+     * @param maxIntervalMillis poll interval used far from every threshold
+     * @param hysteresis fraction of a threshold the free space has to rise above
+     *                   it before the volume is reported recovered
+     * */
+    public LowSpaceMonitor(long minIntervalMillis, long maxIntervalMillis, float hysteresis) {
+
+        if(minIntervalMillis <= 0 || maxIntervalMillis < minIntervalMillis) {
+            throw new IllegalArgumentException("Invalid poll intervals");
+        }
+
+        if(hysteresis < 0) {
+            throw new IllegalArgumentException("Hysteresis cannot be negative");
+        }
+
+        this.minIntervalMillis = minIntervalMillis;
+        this.maxIntervalMillis = maxIntervalMillis;
+        this.hysteresis = hysteresis;
+    }
+
+    /**
+     * @return shared monitor using the default intervals and hysteresis
+     * */
+    @NonNull
+    public static LowSpaceMonitor getInstance() {
+
+        if(instance == null) {
+
+            synchronized (LowSpaceMonitor.class) {
+
+                if(instance == null) {
+                    instance = new LowSpaceMonitor(DEFAULT_MIN_INTERVAL_MILLIS,
+                            DEFAULT_MAX_INTERVAL_MILLIS, DEFAULT_HYSTERESIS);
+                }
+            }
+        }
+
+        return instance;
+    }
+
+    /**
+     * @param path Storage Volume Path
+     * @param thresholdBytes free bytes below which the volume is low
+     * @param listener listener notified on the main thread
+     * */
+    public void addThreshold(@NonNull String path, long thresholdBytes, @NonNull OnLowSpaceListener listener) {
+        add(new Registration(path, thresholdBytes, -1, listener));
+    }
+
+    /**
+     * @param path Storage Volume Path
+     * @param freePercentage free space percentage (0 - 100) below which the volume is low
+     * @param listener listener notified on the main thread
+     * */
+    public void addThresholdPercentage(@NonNull String path, float freePercentage,
+                                       @NonNull OnLowSpaceListener listener) {
+
+        if(freePercentage < 0 || freePercentage > 100) {
+            throw new IllegalArgumentException("Percentage must be between 0 and 100");
+        }
+
+        add(new Registration(path, -1, freePercentage, listener));
+    }
+
+    /**
+     * Removes every threshold registered with the listener
+     *
+     * @param listener listener
+     * */
+    public synchronized void removeListener(@NonNull OnLowSpaceListener listener) {
+
+        List<String> emptyPaths = new ArrayList<>();
+
+        for (Map.Entry<String, List<Registration>> entry : registrations.entrySet()) {
+
+            List<Registration> list = entry.getValue();
+
+            for (int i = list.size() - 1; i >= 0; i--) {
+
+                if(list.get(i).listener == listener) {
+                    list.remove(i);
+                }
+            }
+
+            if(list.isEmpty()) {
+                emptyPaths.add(entry.getKey());
+            }
+        }
+
+        for (String path : emptyPaths) {
+            registrations.remove(path);
+        }
+
+        if(registrations.isEmpty() && executor != null) {
+            executor.shutdownNow();
+            executor = null;
+            pendingPoll = null;
+        }
+    }
+
+    private synchronized void add(Registration registration) {
+
+        if(registration.path == null) {
+            throw new NullPointerException("Path cannot be null");
+        }
+
+        if(registration.listener == null) {
+            throw new NullPointerException("Listener cannot be null");
+        }
+
+        List<Registration> list = registrations.get(registration.path);
+
+        if(list == null) {
+            list = new ArrayList<>();
+            registrations.put(registration.path, list);
+        }
+
+        list.add(registration);
+
+        if(executor == null) {
+            executor = Executors.newSingleThreadScheduledExecutor();
+        }
+
+        //Check the new threshold right away instead of waiting for the next poll
+        executor.execute(pollRunnable);
+    }
+
+    private void poll() {
+
+        Map<String, List<Registration>> snapshot = new HashMap<>();
+
+        synchronized (this) {
+
+            for (Map.Entry<String, List<Registration>> entry : registrations.entrySet()) {
+                snapshot.put(entry.getKey(), new ArrayList<>(entry.getValue()));
+            }
+        }
+
+        double nearest = Double.MAX_VALUE;
+
+        for (Map.Entry<String, List<Registration>> entry : snapshot.entrySet()) {
+
+            StorageVolume volume;
+
+            try {
+                volume = Storage.getStorageVolume(entry.getKey());
+            } catch (IllegalArgumentException e) {
+                //Volume is not mounted
+                continue;
+            }
+
+            if(volume == null || volume.getTotalSpace() <= 0) {
+                continue;
+            }
+
+            for (Registration registration : entry.getValue()) {
+                nearest = Math.min(nearest, registration.check(volume));
+            }
+        }
+
+        schedule(nearest);
+    }
+
+    private synchronized void schedule(double nearestFraction) {
+
+        if(executor == null || registrations.isEmpty()) {
+            return;
+        }
+
+        double scale = Math.min(1, nearestFraction / NEAR_THRESHOLD_FRACTION);
+        long delay = minIntervalMillis + (long) ((maxIntervalMillis - minIntervalMillis) * scale);
+
+        //Keep a single scheduled poll. Polls triggered by add replace it
+        if(pendingPoll != null) {
+            pendingPoll.cancel(false);
+        }
+
+        pendingPoll = executor.schedule(pollRunnable, delay, TimeUnit.MILLISECONDS);
+    }
+
+    private final class Registration {
+
+        final String path;
+        final long thresholdBytes;
+        final float thresholdPercentage;
+        final OnLowSpaceListener listener;
+        boolean low = false;
+
+        Registration(String path, long thresholdBytes, float thresholdPercentage,
+                     OnLowSpaceListener listener) {
+            this.path = path;
+            this.thresholdBytes = thresholdBytes;
+            this.thresholdPercentage = thresholdPercentage;
+            this.listener = listener;
+        }
+
+        /**
+         * @return distance of the free space to the threshold as a fraction of the volume size
+         * */
+        double check(final StorageVolume volume) {
+
+            long threshold = thresholdBytes >= 0 ? thresholdBytes
+                    : (long) (volume.getTotalSpace() * (thresholdPercentage / 100d));
+            long free = volume.getFreeSpace();
+            long recoveredThreshold = threshold + (long) (threshold * (double) hysteresis);
+
+            if(!low && free < threshold) {
+
+                low = true;
+                mainHandler.post(new Runnable() {
+                    @Override
+                    public void run() {
+                        listener.onLowSpace(volume);
+                    }
+                });
+            }else if(low && free > recoveredThreshold) {
+
+                low = false;
+                mainHandler.post(new Runnable() {
+                    @Override
+                    public void run() {
+                        listener.onSpaceRecovered(volume);
+                    }
+                });
+            }
+
+            long target = low ? recoveredThreshold : threshold;
+            return Math.abs(free - target) / (double) volume.getTotalSpace();
+        }
+    }
+}
@@ -0,0 +1,87 @@
+package com.tonyodev.storagegrapher;
+
+import android.content.BroadcastReceiver;
+import android.content.Context;
+import android.content.Intent;
+import android.content.IntentFilter;
+
+import java.lang.ref.WeakReference;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * Shares a single media mount receiver between all caches of the
+ * library. Listeners are notified on the main thread whenever a
+ * storage volume is mounted, unmounted, removed or ejected.
+ *
+ * Listeners are held weakly, so a cache that is dropped without being
+ * released is not kept alive by the receiver.
+ */
+final class MountEvents {
+
+    interface Listener {
+        void onMountChanged();
+    }
+
+    private static final CopyOnWriteArrayList<WeakReference<Listener>> listeners = new CopyOnWriteArrayList<>();
+    private static boolean registered = false;
+
+    private static final BroadcastReceiver receiver = new BroadcastReceiver() {
+        @Override
+        public void onReceive(Context context, Intent intent) {
+
+            for (WeakReference<Listener> reference : listeners) {
+
+                Listener listener = reference.get();
+
+                if(listener == null) {
+                    listeners.remove(reference);
+                }else {
+                    listener.onMountChanged();
+                }
+            }
+        }
+    };
+
+    private MountEvents() {
+    }
+
+    /**
+     * Adds a listener and registers the receiver with the application
+     * context the first time it is called.
+     * */
+    static synchronized void addListener(Context context, Listener listener) {
+
+        removeListener(listener);
+        listeners.add(new WeakReference<>(listener));
+
+        if(!registered) {
+
+            IntentFilter filter = new IntentFilter();
+            filter.addAction(Intent.ACTION_MEDIA_MOUNTED);
+            filter.addAction(Intent.ACTION_MEDIA_UNMOUNTED);
+            filter.addAction(Intent.ACTION_MEDIA_REMOVED);
+            filter.addAction(Intent.ACTION_MEDIA_EJECT);
+            filter.addAction(Intent.ACTION_MEDIA_BAD_REMOVAL);
+            filter.addAction(Intent.ACTION_MEDIA_SHARED);
+            filter.addDataScheme("file");
+
+            context.getApplicationContext().registerReceiver(receiver, filter);
+            registered = true;
+        }
+    }
+
+    /**
+     * Removes a listener and every listener that was garbage collected
+     * */
+    static void removeListener(Listener listener) {
+
+        for (WeakReference<Listener> reference : listeners) {
+
+            Listener current = reference.get();
+
+            if(current == null || current == listener) {
+                listeners.remove(reference);
+            }
+        }
+    }
+}
@@ -0,0 +1,34 @@
+package com.tonyodev.storagegrapher;
+
+import android.support.annotation.NonNull;
+
+/**
+ * Callback used by asynchronous directory scans.
+ * All methods are called on the main thread. No method is
+ * called after the scan has been cancelled.
+ */
+public interface ScanCallback {
+
+    /**
+     * Called periodically while the scan is running
+     *
+     * @param bytes bytes counted so far
+     * @param entries files and directories visited so far
+     * */
+    void onProgress(long bytes, long entries);
+
+    /**
+     * Called once when the scan completes
+     *
+     * @param result scan result
+     * */
+    void onComplete(@NonNull ScanResult result);
+
+    /**
+     * Called once instead of onComplete when the scan fails, for example
+     * with a SecurityException or an error thrown by the storage backend
+     *
+     * @param throwable cause of the failure
+     * */
+    void onError(@NonNull Throwable throwable);
+}
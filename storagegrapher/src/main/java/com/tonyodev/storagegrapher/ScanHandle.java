@@ -0,0 +1,113 @@
+package com.tonyodev.storagegrapher;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
+
+/**
+ * Handle to an asynchronous directory scan. Cancelling a scan stops
+ * the walk at the next entry and no further callbacks are delivered.
+ * The scan is done once the walk returned, whether it completed, failed
+ * or stopped after being cancelled.
+ */
+public final class ScanHandle {
+
+    private static final Handler mainHandler = new Handler(Looper.getMainLooper());
+
+    private final ScanCallback callback;
+    private final long progressIntervalMillis;
+
+    private volatile boolean cancelled = false;
+    private volatile boolean done = false;
+    private long lastProgressMillis;
+
+    ScanHandle(ScanCallback callback, long progressIntervalMillis) {
+        this.callback = callback;
+        this.progressIntervalMillis = progressIntervalMillis;
+    }
+
+    /**
+     * Cancels the scan. Has no effect if the scan already completed.
+     * */
+    public void cancel() {
+        cancelled = true;
+    }
+
+    /**
+     * @return true if the scan was cancelled
+     * */
+    public boolean isCancelled() {
+        return cancelled;
+    }
+
+    /**
+     * @return true if the scan is no longer running. A cancelled scan is
+     * done once its walk stopped
+     * */
+    public boolean isDone() {
+        return done;
+    }
+
+    void onProgress(final long bytes, final long entries) {
+
+        long now = SystemClock.uptimeMillis();
+
+        if(callback == null || cancelled || now - lastProgressMillis < progressIntervalMillis) {
+            return;
+        }
+
+        lastProgressMillis = now;
+        mainHandler.post(new Runnable() {
+            @Override
+            public void run() {
+
+                if(!cancelled && !done) {
+                    callback.onProgress(bytes, entries);
+                }
+            }
+        });
+    }
+
+    //Called on the scan thread once the walk returned. A cancelled scan only becomes done
+    void onComplete(final ScanResult result) {
+
+        done = true;
+
+        if(cancelled || callback == null) {
+            return;
+        }
+
+        mainHandler.post(new Runnable() {
+            @Override
+            public void run() {
+
+                if(!cancelled) {
+                    callback.onComplete(result);
+                }
+            }
+        });
+    }
+
+    void onError(final Throwable throwable) {
+
+        done = true;
+
+        if(cancelled || callback == null) {
+            return;
+        }
+
+        mainHandler.post(new Runnable() {
+            @Override
+            public void run() {
+
+                if(!cancelled) {
+                    callback.onError(throwable);
+                }
+            }
+        });
+    }
+
+    void onCancelled() {
+        done = true;
+    }
+}
@@ -0,0 +1,68 @@
+package com.tonyodev.storagegrapher;
+
+/**
+ * This class holds the result of a directory scan
+ * and the number of system calls the scan needed.
+ */
+public final class ScanResult {
+
+    private final String path;
+    private final long bytes;
+    private final long fileCount;
+    private final long directoryCount;
+    private final long statCalls;
+    private final long savedStatCalls;
+
+    ScanResult(String path, long bytes, long fileCount, long directoryCount,
+               long statCalls, long savedStatCalls) {
+        this.path = path;
+        this.bytes = bytes;
+        this.fileCount = fileCount;
+        this.directoryCount = directoryCount;
+        this.statCalls = statCalls;
+        this.savedStatCalls = savedStatCalls;
+    }
+
+    /**
+     * @return  path of the scanned file or directory
+     * */
+    public String getPath() {
+        return path;
+    }
+
+    /**
+     * @return  total size in bytes
+     * */
+    public long getBytes() {
+        return bytes;
+    }
+
+    /**
+     * @return  number of files visited
+     * */
+    public long getFileCount() {
+        return fileCount;
+    }
+
+    /**
+     * @return  number of directories visited, including the root directory
+     * */
+    public long getDirectoryCount() {
+        return directoryCount;
+    }
+
+    /**
+     * @return  number of stat system calls issued by the scan
+     * */
+    public long getStatCalls() {
+        return statCalls;
+    }
+
+    /**
+     * @return  number of stat system calls saved compared to
+     * calling exists, length and isDirectory on every entry
+     * */
+    public long getSavedStatCalls() {
+        return savedStatCalls;
+    }
+}
@@ -0,0 +1,67 @@
+package com.tonyodev.storagegrapher;
+
+/**
+ * This class holds an estimated directory size
+ * and its 95% confidence interval.
+ */
+public final class SizeEstimate {
+
+    private final String path;
+    private final long bytes;
+    private final long lowerBytes;
+    private final long upperBytes;
+    private final long samples;
+    private final boolean exact;
+
+    SizeEstimate(String path, long bytes, long lowerBytes, long upperBytes,
+                 long samples, boolean exact) {
+        this.path = path;
+        this.bytes = bytes;
+        this.lowerBytes = lowerBytes;
+        this.upperBytes = upperBytes;
+        this.samples = samples;
+        this.exact = exact;
+    }
+
+    /**
+     * @return  path of the estimated directory
+     * */
+    public String getPath() {
+        return path;
+    }
+
+    /**
+     * @return  estimated size in bytes
+     * */
+    public long getBytes() {
+        return bytes;
+    }
+
+    /**
+     * @return  lower bound of the 95% confidence interval in bytes
+     * */
+    public long getLowerBytes() {
+        return lowerBytes;
+    }
+
+    /**
+     * @return  upper bound of the 95% confidence interval in bytes
+     * */
+    public long getUpperBytes() {
+        return upperBytes;
+    }
+
+    /**
+     * @return  number of random probes the estimate is based on
+     * */
+    public long getSamples() {
+        return samples;
+    }
+
+    /**
+     * @return  true if the whole tree was read and the size is exact
+     * */
+    public boolean isExact() {
+        return exact;
+    }
+}
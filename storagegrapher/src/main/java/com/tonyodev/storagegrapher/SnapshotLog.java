@@ -0,0 +1,821 @@
+package com.tonyodev.storagegrapher;
+
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Append only log of Storage Volume snapshots and scan summaries. Every
+ * record has the same width so a record is found by its index without
+ * parsing the records before it. Paths are stored once in a path table
+ * and referenced from records by id.
+ *
+ * The log is split into segments. When the active segment is full a new
+ * one is started and the oldest segments are deleted once there are more
+ * than the maximum number of segments. {@link #compact(long, long)}
+ * thins out old records of closed segments and drops paths no record
+ * references anymore from the path table.
+ *
+ * With the default limits the log keeps the last 524,288 records, 24MB.
+ * That is a month of history at one record every 5 seconds, but only
+ * about 6 days at one record per second. Logs written more often need
+ * larger limits, or compaction of older records.
+ *
+ * Records are read through a {@link Reader} that memory maps the segments,
+ * so reading records does not allocate.
+ */
+public final class SnapshotLog implements Closeable {
+
+    public static final int TYPE_VOLUME = 1;
+    public static final int TYPE_SCAN = 2;
+
+    /** records of a 3MB segment*/
+    public static final int DEFAULT_RECORDS_PER_SEGMENT = 64 * 1024;
+
+    /** segments kept. 524,288 records, a month at one record every 5 seconds*/
+    public static final int DEFAULT_MAX_SEGMENTS = 8;
+
+    private static final int MAGIC = 0x53474c47;
+    private static final int VERSION = 1;
+    private static final int HEADER_SIZE = 16;
+
+    //timestamp, type, path id and four values
+    private static final int RECORD_SIZE = 48;
+
+    private static final int OFFSET_TIMESTAMP = 0;
+    private static final int OFFSET_TYPE = 8;
+    private static final int OFFSET_PATH = 12;
+    private static final int OFFSET_VALUE_0 = 16;
+    private static final int OFFSET_VALUE_1 = 24;
+    private static final int OFFSET_VALUE_2 = 32;
+    private static final int OFFSET_VALUE_3 = 40;
+
+    private static final String SEGMENT_EXTENSION = ".log";
+    private static final String PATHS_EXTENSION = ".paths";
+
+    private final File directory;
+    private final String name;
+    private final int recordsPerSegment;
+    private final int maxSegments;
+    private final ByteBuffer recordBuffer = ByteBuffer.allocate(RECORD_SIZE);
+
+    private final Map<String, Integer> pathIds = new HashMap<>();
+    private final List<String> paths = new ArrayList<>();
+    private final List<Long> segments = new ArrayList<>();
+
+    private boolean opened = false;
+    private DataOutputStream pathOutput;
+    private FileChannel activeChannel;
+    private long activeRecords;
+
+    /**
+     * @param directory directory the log files are kept in
+     * @param name name of the log. Used as the prefix of its files
+     * */
+    public SnapshotLog(@NonNull File directory, @NonNull String name) {
+        this(directory, name, DEFAULT_RECORDS_PER_SEGMENT, DEFAULT_MAX_SEGMENTS);
+    }
+
+    /**
+     * @param directory directory the log files are kept in
+     * @param name name of the log. Used as the prefix of its files
+     * @param recordsPerSegment number of records after which a new segment is started
+     * @param maxSegments number of segments kept. Older segments are deleted
+     * */
+    public SnapshotLog(@NonNull File directory, @NonNull String name, int recordsPerSegment, int maxSegments) {
+
+        if(directory == null) {
+            throw new NullPointerException("Directory cannot be null");
+        }
+
+        if(name == null) {
+            throw new NullPointerException("Name cannot be null");
+        }
+
+        if(recordsPerSegment <= 0 || maxSegments <= 0) {
+            throw new IllegalArgumentException("Segment limits must be greater than 0");
+        }
+
+        this.directory = directory;
+        this.name = name;
+        this.recordsPerSegment = recordsPerSegment;
+        this.maxSegments = maxSegments;
+    }
+
+    /**
+     * @param volume Storage Volume snapshot
+     * @param timestamp time of the snapshot in milliseconds
+     * @return true if the record was written
+     * */
+    public synchronized boolean append(@NonNull StorageVolume volume, long timestamp) {
+
+        if(volume == null) {
+            throw new NullPointerException("Volume cannot be null");
+        }
+
+        return append(TYPE_VOLUME, volume.getPath(), timestamp, volume.getTotalSpace(),
+                volume.getFreeSpace(), 0, 0);
+    }
+
+    /**
+     * @param result scan summary
+     * @param timestamp time of the scan in milliseconds
+     * @return true if the record was written
+     * */
+    public synchronized boolean append(@NonNull ScanResult result, long timestamp) {
+
+        if(result == null) {
+            throw new NullPointerException("Result cannot be null");
+        }
+
+        return append(TYPE_SCAN, result.getPath(), timestamp, result.getBytes(),
+                result.getFileCount(), result.getDirectoryCount(), result.getStatCalls());
+    }
+
+    /**
+     * Maps the segments as they are now. Records appended later are not
+     * visible to the reader.
+     *
+     * @return reader over every record in the log
+     * */
+    @NonNull
+    public synchronized Reader openReader() {
+
+        open();
+
+        List<ByteBuffer> buffers = new ArrayList<>(segments.size());
+
+        for (Long sequence : segments) {
+
+            ByteBuffer buffer = map(getSegmentFile(sequence));
+
+            if(buffer != null) {
+                buffers.add(buffer);
+            }
+        }
+
+        return new Reader(buffers.toArray(new ByteBuffer[buffers.size()]),
+                paths.toArray(new String[paths.size()]));
+    }
+
+    /**
+     * Thins out the records of closed segments that are older than a time.
+     * Of those records only the first record of every path and type per
+     * interval is kept. The active segment is not changed. Paths that are
+     * no longer referenced by any record, for example because their
+     * segments were deleted, are then dropped from the path table.
+     *
+     * @param beforeTimestamp records older than this time are compacted
+     * @param intervalMillis interval that is kept one record per path and type
+     * @return number of records removed
+     * */
+    public synchronized long compact(long beforeTimestamp, long intervalMillis) {
+
+        if(intervalMillis <= 0) {
+            throw new IllegalArgumentException("Interval must be greater than 0");
+        }
+
+        open();
+
+        long removed = 0;
+
+        for (int i = 0; i < segments.size() - 1; i++) {
+            removed += compactSegment(getSegmentFile(segments.get(i)), beforeTimestamp, intervalMillis);
+        }
+
+        compactPaths();
+        return removed;
+    }
+
+    /**
+     * Closes the log files. The log is opened again by the next call.
+     * */
+    @Override
+    public synchronized void close() {
+        closeQuietly(pathOutput);
+        closeQuietly(activeChannel);
+        pathOutput = null;
+        activeChannel = null;
+        opened = false;
+        pathIds.clear();
+        paths.clear();
+        segments.clear();
+    }
+
+    private boolean append(int type, String path, long timestamp, long value0, long value1,
+                           long value2, long value3) {
+
+        open();
+
+        if(pathOutput == null) {
+            //Log files could not be opened
+            return false;
+        }
+
+        try {
+
+            if(activeChannel == null || activeRecords >= recordsPerSegment) {
+                rotate();
+            }
+
+            int pathId = getPathId(path);
+
+            recordBuffer.clear();
+            recordBuffer.putLong(timestamp);
+            recordBuffer.putInt(type);
+            recordBuffer.putInt(pathId);
+            recordBuffer.putLong(value0);
+            recordBuffer.putLong(value1);
+            recordBuffer.putLong(value2);
+            recordBuffer.putLong(value3);
+            recordBuffer.flip();
+
+            while (recordBuffer.hasRemaining()) {
+                activeChannel.write(recordBuffer);
+            }
+
+            activeRecords++;
+            return true;
+        } catch (IOException e) {
+            //A path or record may be partially written. Opening the log again cuts it off
+            close();
+            return false;
+        }
+    }
+
+    private int getPathId(String path) throws IOException {
+
+        Integer id = pathIds.get(path);
+
+        if(id != null) {
+            return id;
+        }
+
+        //The path is written before any record that references it
+        pathOutput.writeUTF(path);
+        pathOutput.flush();
+
+        int newId = paths.size();
+        paths.add(path);
+        pathIds.put(path, newId);
+        return newId;
+    }
+
+    private void open() {
+
+        if(opened) {
+            return;
+        }
+
+        opened = true;
+
+        if(!directory.exists()) {
+            directory.mkdirs();
+        }
+
+        boolean pathsLoaded = loadPaths();
+
+        String[] names = directory.list();
+        String prefix = name + "-";
+
+        if(names != null) {
+
+            for (String fileName : names) {
+
+                if(!fileName.startsWith(prefix) || !fileName.endsWith(SEGMENT_EXTENSION)) {
+                    continue;
+                }
+
+                try {
+                    segments.add(Long.parseLong(fileName.substring(prefix.length(),
+                            fileName.length() - SEGMENT_EXTENSION.length())));
+                } catch (NumberFormatException e) {
+                    //Not a segment of this log
+                }
+            }
+        }
+
+        Collections.sort(segments);
+
+        //Appending to an unreadable path table would give new paths the wrong ids
+        if(!pathsLoaded) {
+            return;
+        }
+
+        try {
+
+            pathOutput = new DataOutputStream(new FileOutputStream(getPathsFile(), true));
+
+            if(!segments.isEmpty()) {
+                openSegment(segments.get(segments.size() - 1));
+            }
+        } catch (IOException e) {
+            //Surfaced by append. It returns false while the files cannot be written
+        }
+    }
+
+    //Returns false when the table exists but could not be read or repaired
+    private boolean loadPaths() {
+
+        File pathsFile = getPathsFile();
+
+        if(!pathsFile.exists()) {
+            return true;
+        }
+
+        byte[] table;
+
+        try {
+            table = readFully(pathsFile);
+        } catch (IOException e) {
+            return false;
+        }
+
+        DataInputStream input = new DataInputStream(new ByteArrayInputStream(table));
+        int validLength = 0;
+
+        try {
+
+            while (validLength < table.length) {
+
+                String path = input.readUTF();
+
+                //Empty entries are paths dropped by compactPaths. Their ids are not reused
+                if(path.length() > 0) {
+                    pathIds.put(path, paths.size());
+                }
+
+                paths.add(path);
+                validLength = table.length - input.available();
+            }
+        } catch (IOException e) {
+            //A path that was only partially written before a crash
+        }
+
+        if(validLength == table.length) {
+            return true;
+        }
+
+        //Cut the partial path off so the next path is not appended after it
+        RandomAccessFile file = null;
+
+        try {
+            file = new RandomAccessFile(pathsFile, "rw");
+            file.setLength(validLength);
+            return true;
+        } catch (IOException e) {
+            return false;
+        } finally {
+            closeQuietly(file);
+        }
+    }
+
+    //Replaces paths no record references with empty entries so the ids of all
+    //other paths stay the same and no segment has to be rewritten
+    private void compactPaths() {
+
+        if(pathOutput == null || paths.isEmpty()) {
+            return;
+        }
+
+        boolean[] referenced = new boolean[paths.size()];
+
+        for (Long sequence : segments) {
+
+            ByteBuffer buffer = map(getSegmentFile(sequence));
+
+            if(buffer == null) {
+                continue;
+            }
+
+            for (int offset = OFFSET_PATH; offset < buffer.limit(); offset += RECORD_SIZE) {
+
+                int id = buffer.getInt(offset);
+
+                if(id >= 0 && id < referenced.length) {
+                    referenced[id] = true;
+                }
+            }
+        }
+
+        boolean unreferenced = false;
+
+        for (int i = 0; i < referenced.length; i++) {
+            unreferenced |= !referenced[i] && paths.get(i).length() > 0;
+        }
+
+        if(!unreferenced) {
+            return;
+        }
+
+        File pathsFile = getPathsFile();
+        File tempFile = new File(pathsFile.getAbsolutePath() + ".tmp");
+        DataOutputStream output = null;
+        boolean saved = false;
+
+        try {
+
+            output = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tempFile)));
+
+            for (int i = 0; i < referenced.length; i++) {
+                output.writeUTF(referenced[i] ? paths.get(i) : "");
+            }
+
+            output.close();
+            output = null;
+
+            closeQuietly(pathOutput);
+            pathOutput = null;
+            saved = tempFile.renameTo(pathsFile);
+        } catch (IOException e) {
+            //The old table stays in use
+        } finally {
+            closeQuietly(output);
+        }
+
+        if(saved) {
+
+            for (int i = 0; i < referenced.length; i++) {
+
+                if(!referenced[i]) {
+                    pathIds.remove(paths.get(i));
+                    paths.set(i, "");
+                }
+            }
+        }else {
+            tempFile.delete();
+        }
+
+        if(pathOutput == null) {
+
+            try {
+                pathOutput = new DataOutputStream(new FileOutputStream(pathsFile, true));
+            } catch (IOException e) {
+                //Appends fail until the log is opened again
+            }
+        }
+    }
+
+    private static byte[] readFully(File file) throws IOException {
+
+        RandomAccessFile input = new RandomAccessFile(file, "r");
+
+        try {
+            byte[] bytes = new byte[(int) input.length()];
+            input.readFully(bytes);
+            return bytes;
+        } finally {
+            closeQuietly(input);
+        }
+    }
+
+    private void openSegment(long sequence) throws IOException {
+
+        File file = getSegmentFile(sequence);
+        boolean created = !file.exists();
+        FileChannel channel = new RandomAccessFile(file, "rw").getChannel();
+
+        if(created || channel.size() < HEADER_SIZE) {
+
+            ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+            header.putInt(MAGIC);
+            header.putInt(VERSION);
+            header.putInt(RECORD_SIZE);
+            header.putInt(0);
+            header.flip();
+            channel.truncate(0);
+
+            while (header.hasRemaining()) {
+                channel.write(header, header.position());
+            }
+        }
+
+        //Drop a record that was only partially written before a crash
+        long records = (channel.size() - HEADER_SIZE) / RECORD_SIZE;
+        channel.truncate(HEADER_SIZE + records * RECORD_SIZE);
+        channel.position(channel.size());
+
+        activeChannel = channel;
+        activeRecords = records;
+    }
+
+    private void rotate() throws IOException {
+
+        closeQuietly(activeChannel);
+        activeChannel = null;
+
+        long sequence = segments.isEmpty() ? 0 : segments.get(segments.size() - 1) + 1;
+        segments.add(sequence);
+        openSegment(sequence);
+
+        while (segments.size() > maxSegments) {
+            getSegmentFile(segments.remove(0)).delete();
+        }
+    }
+
+    private long compactSegment(File file, long beforeTimestamp, long intervalMillis) {
+
+        ByteBuffer source = map(file);
+
+        if(source == null) {
+            return 0;
+        }
+
+        int count = source.limit() / RECORD_SIZE;
+        Map<Long, Long> lastIntervals = new HashMap<>();
+        ByteBuffer kept = ByteBuffer.allocate(HEADER_SIZE + count * RECORD_SIZE);
+        kept.putInt(MAGIC);
+        kept.putInt(VERSION);
+        kept.putInt(RECORD_SIZE);
+        kept.putInt(0);
+
+        long removed = 0;
+
+        for (int i = 0; i < count; i++) {
+
+            int offset = i * RECORD_SIZE;
+            long timestamp = source.getLong(offset + OFFSET_TIMESTAMP);
+
+            if(timestamp < beforeTimestamp) {
+
+                long key = ((long) source.getInt(offset + OFFSET_TYPE) << 32)
+                        | (source.getInt(offset + OFFSET_PATH) & 0xffffffffL);
+                Long interval = timestamp / intervalMillis;
+
+                if(interval.equals(lastIntervals.put(key, interval))) {
+                    removed++;
+                    continue;
+                }
+            }
+
+            for (int x = 0; x < RECORD_SIZE; x++) {
+                kept.put(source.get(offset + x));
+            }
+        }
+
+        if(removed == 0) {
+            return 0;
+        }
+
+        kept.flip();
+
+        File tempFile = new File(file.getAbsolutePath() + ".tmp");
+        FileOutputStream output = null;
+        boolean saved = false;
+
+        try {
+            output = new FileOutputStream(tempFile);
+            output.getChannel().write(kept);
+            output.close();
+            output = null;
+            saved = tempFile.renameTo(file);
+        } catch (IOException e) {
+            //The segment is kept as it is
+        } finally {
+            closeQuietly(output);
+        }
+
+        if(!saved) {
+            tempFile.delete();
+            return 0;
+        }
+
+        return removed;
+    }
+
+    //Maps the records of a segment. Position 0 of the buffer is the first record
+    @Nullable
+    private static ByteBuffer map(File file) {
+
+        RandomAccessFile input = null;
+
+        try {
+
+            input = new RandomAccessFile(file, "r");
+            FileChannel channel = input.getChannel();
+
+            if(channel.size() < HEADER_SIZE) {
+                return null;
+            }
+
+            ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+            channel.read(header, 0);
+
+            if(header.getInt(0) != MAGIC || header.getInt(4) != VERSION
+                    || header.getInt(8) != RECORD_SIZE) {
+                return null;
+            }
+
+            long records = (channel.size() - HEADER_SIZE) / RECORD_SIZE;
+
+            //The mapping stays valid after the channel is closed
+            return channel.map(FileChannel.MapMode.READ_ONLY, HEADER_SIZE, records * RECORD_SIZE);
+        } catch (IOException e) {
+            //Unreadable segment. Skipped like one with a bad header
+            return null;
+        } finally {
+            closeQuietly(input);
+        }
+    }
+
+    private File getSegmentFile(long sequence) {
+        return new File(directory, name + "-" + sequence + SEGMENT_EXTENSION);
+    }
+
+    private File getPathsFile() {
+        return new File(directory, name + PATHS_EXTENSION);
+    }
+
+    private static void closeQuietly(Closeable closeable) {
+
+        if(closeable != null) {
+
+            try {
+                closeable.close();
+            } catch (IOException e) {
+                //Only files that were read or already failed are closed quietly
+            }
+        }
+    }
+
+    /**
+     * Read only view of the records of a log. Records are addressed by an
+     * index from 0 to {@link #getRecordCount()} - 1 in the order they were
+     * appended. None of the accessors allocate.
+     * */
+    public static final class Reader {
+
+        private final ByteBuffer[] segments;
+        private final long[] firstIndexes;
+        private final String[] paths;
+        private final long recordCount;
+
+        Reader(ByteBuffer[] segments, String[] paths) {
+
+            this.segments = segments;
+            this.paths = paths;
+            this.firstIndexes = new long[segments.length];
+
+            long count = 0;
+
+            for (int i = 0; i < segments.length; i++) {
+                firstIndexes[i] = count;
+                count += segments[i].limit() / RECORD_SIZE;
+            }
+
+            this.recordCount = count;
+        }
+
+        /**
+         * @return  number of records in the log
+         * */
+        public long getRecordCount() {
+            return recordCount;
+        }
+
+        /**
+         * @return  {@link #TYPE_VOLUME} or {@link #TYPE_SCAN}
+         * */
+        public int getType(long index) {
+            return getInt(index, OFFSET_TYPE);
+        }
+
+        /**
+         * @return  time of the record in milliseconds
+         * */
+        public long getTimestamp(long index) {
+            return getLong(index, OFFSET_TIMESTAMP);
+        }
+
+        /**
+         * @return  path of the volume or scanned directory
+         * */
+        @Nullable
+        public String getPath(long index) {
+            int id = getInt(index, OFFSET_PATH);
+            return id >= 0 && id < paths.length ? paths[id] : null;
+        }
+
+        /**
+         * @return  total bytes of a volume record
+         * */
+        public long getTotalBytes(long index) {
+            return getLong(index, OFFSET_VALUE_0);
+        }
+
+        /**
+         * @return  free bytes of a volume record
+         * */
+        public long getFreeBytes(long index) {
+            return getLong(index, OFFSET_VALUE_1);
+        }
+
+        /**
+         * @return  used bytes of a volume record
+         * */
+        public long getUsedBytes(long index) {
+            return getTotalBytes(index) - getFreeBytes(index);
+        }
+
+        /**
+         * @return  scanned bytes of a scan record
+         * */
+        public long getScanBytes(long index) {
+            return getLong(index, OFFSET_VALUE_0);
+        }
+
+        /**
+         * @return  file count of a scan record
+         * */
+        public long getFileCount(long index) {
+            return getLong(index, OFFSET_VALUE_1);
+        }
+
+        /**
+         * @return  directory count of a scan record
+         * */
+        public long getDirectoryCount(long index) {
+            return getLong(index, OFFSET_VALUE_2);
+        }
+
+        /**
+         * @return  stat calls of a scan record
+         * */
+        public long getStatCalls(long index) {
+            return getLong(index, OFFSET_VALUE_3);
+        }
+
+        /**
+         * Finds the first record at or after a time. Expects records to be
+         * appended in time order.
+         *
+         * @param timestamp time in milliseconds
+         * @return index of the record or the record count if there is none
+         * */
+        public long findFirst(long timestamp) {
+
+            long low = 0;
+            long high = recordCount;
+
+            while (low < high) {
+
+                long middle = (low + high) >>> 1;
+
+                if(getTimestamp(middle) < timestamp) {
+                    low = middle + 1;
+                }else {
+                    high = middle;
+                }
+            }
+
+            return low;
+        }
+
+        private long getLong(long index, int offset) {
+            int segment = findSegment(index);
+            return segments[segment].getLong((int) ((index - firstIndexes[segment]) * RECORD_SIZE) + offset);
+        }
+
+        private int getInt(long index, int offset) {
+            int segment = findSegment(index);
+            return segments[segment].getInt((int) ((index - firstIndexes[segment]) * RECORD_SIZE) + offset);
+        }
+
+        private int findSegment(long index) {
+
+            if(index < 0 || index >= recordCount) {
+                throw new IndexOutOfBoundsException("Index: " + index + " Count: " + recordCount);
+            }
+
+            int segment = Arrays.binarySearch(firstIndexes, index);
+
+            if(segment < 0) {
+                return -segment - 2;
+            }
+
+            //Skip empty segments that share the same first index
+            while (segment + 1 < firstIndexes.length && firstIndexes[segment + 1] == index) {
+                segment++;
+            }
+
+            return segment;
+        }
+    }
+}
@@ -3,18 +3,16 @@ package com.tonyodev.storagegrapher;
 import android.content.Context;
 import android.os.Build;
 import android.os.Environment;
-import android.os.StatFs;
-import android.os.storage.StorageManager;
 import android.support.annotation.NonNull;
 import android.support.annotation.Nullable;
-import android.support.v4.os.EnvironmentCompat;
 import android.text.format.Formatter;
 
 import java.io.File;
-import java.util.Arrays;
-import java.util.LinkedList;
+import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
-import java.util.Queue;
+import java.util.Map;
+import java.util.concurrent.Executor;
 
 /**
  * Created by tonyofrancis on 4/21/17.
@@ -25,6 +23,25 @@ import java.util.Queue;
 
 public final class Storage {
 
+    /**
+     * Scan flag. Follow symbolic links. Directories reached through
+     * several links are still only counted once.
+     * */
+    public static final int SCAN_FOLLOW_LINKS = 1;
+
+    /**
+     * Scan flag. Do not descend into directories on a different
+     * file system than the scanned directory.
+     * */
+    public static final int SCAN_SAME_FILE_SYSTEM = 1 << 1;
+
+    /**
+     * Scan flag. Count files with several hard links only once.
+     * */
+    public static final int SCAN_DEDUPLICATE_HARD_LINKS = 1 << 2;
+
+    private static final long DEFAULT_PROGRESS_INTERVAL_MILLIS = 250;
+
     /**
      * Formats a content size to be in the form of bytes, kilobytes, megabytes, etc.
      * @param context context
@@ -63,20 +80,7 @@ public final class Storage {
             throw new IllegalArgumentException("Path: cannot be null");
         }
 
-        StatFs stat = new StatFs(volumePath);
-
-        long blockSize;
-        long availableBlocks;
-
-        if(Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN_MR2) {
-            blockSize = stat.getBlockSizeLong();
-            availableBlocks = stat.getAvailableBlocksLong();
-        }else {
-            blockSize = (long) stat.getBlockSize();
-            availableBlocks = (long) stat.getAvailableBlocks();
-        }
-
-        return availableBlocks * blockSize;
+        return readVolume(volumePath).freeBytes;
     }
 
     /**
@@ -102,22 +106,7 @@ public final class Storage {
             throw new IllegalArgumentException("Path: cannot be null");
         }
 
-        StatFs stat = new StatFs(volumePath);
-        long blockSize;
-        long availableBlocks;
-        long totalBlocks;
-
-        if(Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN_MR2) {
-            blockSize = stat.getBlockSizeLong();
-            availableBlocks = stat.getAvailableBlocksLong();
-            totalBlocks = stat.getBlockCountLong();
-        }else {
-            blockSize = (long) stat.getBlockSize();
-            availableBlocks = (long) stat.getAvailableBlocks();
-            totalBlocks = (long) stat.getBlockCount();
-        }
-
-        return (totalBlocks * blockSize) - (availableBlocks * blockSize);
+        return readVolume(volumePath).getUsedBytes();
     }
 
     /**
@@ -143,19 +132,7 @@ public final class Storage {
             throw new IllegalArgumentException("Path: cannot be null");
         }
 
-        StatFs stat = new StatFs(volumePath);
-        long blockSize;
-        long totalBlocks;
-
-        if(Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN_MR2) {
-            blockSize = stat.getBlockSizeLong();
-            totalBlocks = stat.getBlockCountLong();
-        }else {
-            blockSize = (long) stat.getBlockSize();
-            totalBlocks = (long) stat.getBlockCount();
-        }
-
-        return totalBlocks * blockSize;
+        return readVolume(volumePath).totalBytes;
     }
 
     /**
@@ -175,6 +152,8 @@ public final class Storage {
     }
 
     /**
+     * Volumes are discovered once and cached by {@link StorageVolumeRegistry}
+     * until a volume is mounted or unmounted.
      *
      * @return File = Secondary storage directory. eg. SD Card
      * */
@@ -185,54 +164,11 @@ public final class Storage {
             throw new NullPointerException("Context cannot be null");
         }
 
-        String storage = System.getenv("SECONDARY_STORAGE");
-
-        if ((storage == null) || (storage.length() == 0)) {
-            storage = System.getenv("EXTERNAL_SDCARD_STORAGE");
-        }
-
-        if(storage != null) {
-            return new File(storage);
-        }
-
-        if(Build.VERSION.SDK_INT >= Build.VERSION_CODES.N) {
-
-            StorageManager storageManager = (StorageManager) context.getSystemService(Context.STORAGE_SERVICE);
-            List<android.os.storage.StorageVolume> volumes = storageManager.getStorageVolumes();
-
-            for (android.os.storage.StorageVolume volume : volumes) {
-
-                if(volume.getDescription(context).equalsIgnoreCase("SD card") && volume.isRemovable()) {
-                    return new File("/storage/" + volume.getUuid());
-                }
-            }
-        }else {
-
-            File storageDir = new File("/storage");
-
-            if(storageDir.exists() && storageDir.isDirectory()) {
-
-                File[] files = storageDir.listFiles();
-
-                if(files != null) {
-
-                    for (File file : files) {
-
-                        if(file != null && file.isDirectory()
-                                && Environment.MEDIA_MOUNTED.equals(EnvironmentCompat.getStorageState(file.getAbsoluteFile()))
-                                && (isNewSdNameFormat(file.getName()) || file.getName().startsWith("sd"))) {
-                            return file;
-                        }
-                    }
-                }
-            }
-        }
-
-        return null;
+        return StorageVolumeRegistry.getInstance(context).getSecondaryStorageDir();
     }
 
     //eg 1D4C-1CE9
-    private static boolean isNewSdNameFormat(String name) {
+    static boolean isNewSdNameFormat(String name) {
 
         if(name == null || name.isEmpty() || name.length() != 9 || name.charAt(4) != '-') {
             return false;
@@ -341,6 +277,26 @@ public final class Storage {
         return getDirectorySize(file);
     }
 
+    /**
+     * @param context context
+     * @param index index used to skip unchanged directories
+     * @return the size of the directory in bytes
+     * */
+    public static long getSecondaryAppFilesDirBytes(Context context, @NonNull DirectorySizeIndex index) {
+
+        if(context == null) {
+            throw new NullPointerException("Context cannot be null");
+        }
+
+        File file = getSecondaryAppFilesDir(context);
+
+        if(file == null || !file.exists()) {
+            return 0;
+        }
+
+        return index.getDirectorySize(file);
+    }
+
     /**
      * @param context context
      * @return the size of the directory in bytes
@@ -360,6 +316,26 @@ public final class Storage {
         return getDirectorySize(file);
     }
 
+    /**
+     * @param context context
+     * @param index index used to skip unchanged directories
+     * @return the size of the directory in bytes
+     * */
+    public static long getPrimaryAppFilesDirBytes(Context context, @NonNull DirectorySizeIndex index) {
+
+        if(context == null) {
+            throw new NullPointerException("Context cannot be null");
+        }
+
+        File file = getPrimaryAppFilesDir(context);
+
+        if(file == null || !file.exists()) {
+            return 0;
+        }
+
+        return index.getDirectorySize(file);
+    }
+
     /**
      * @param bytesAmount bytes amount
      * @param bytesTotal total bytes
@@ -394,9 +370,91 @@ public final class Storage {
             throw new NullPointerException("Path cannot be null");
         }
 
-        long used = getUsedBytesForVolume(path);
-        long free = getAvailableBytesForVolume(path);
-        long total =getTotalBytesForVolume(path);
+        return createStorageVolume(path, readVolume(path));
+    }
+
+    /**
+     * Gets Storage Volumes for several paths at once. Paths that are on the
+     * same mounted file system share a single statfs call and snapshot.
+     *
+     * @param paths file paths
+     * @return Storage Volumes in the same order as the paths. An item is null
+     * if the path could not be read
+     * */
+    @NonNull
+    public static List<StorageVolume> getStorageVolumes(@NonNull String... paths) {
+
+        if(paths == null) {
+            throw new NullPointerException("Paths cannot be null");
+        }
+
+        List<StorageVolume> volumes = new ArrayList<>(paths.length);
+        Map<Object, StorageVolume> snapshots = new HashMap<>();
+
+        for (String path : paths) {
+
+            if(path == null) {
+                throw new NullPointerException("Path cannot be null");
+            }
+
+            Object mountKey = getMountKey(path);
+            StorageVolume snapshot = snapshots.get(mountKey);
+
+            if(snapshot == null) {
+
+                try {
+                    snapshot = createStorageVolume(path, readVolume(path));
+                } catch (IllegalArgumentException e) {
+                    volumes.add(null);
+                    continue;
+                }
+
+                snapshots.put(mountKey, snapshot);
+            }
+
+            if(snapshot.getPath().equals(path)) {
+                volumes.add(snapshot);
+            }else {
+                volumes.add(new StorageVolume(path, snapshot.getFreeSpace(), snapshot.getUsedSpace(),
+                        snapshot.getTotalSpace(), snapshot.getUsedSpacePercentage(),
+                        snapshot.getFreeSpacePercentage()));
+            }
+        }
+
+        return volumes;
+    }
+
+    //Device id of the file system a path is on. Falls back to the path itself
+    private static Object getMountKey(String path) {
+
+        EntryStat stat = new EntryStat();
+        stat.followLinks = true;
+
+        if(stat.read(path) && stat.device != 0) {
+            return stat.device;
+        }
+
+        return path;
+    }
+
+    //Reads a volume through the storage backend. Throws like StatFs does for unreadable paths
+    private static VolumeStat readVolume(String path) {
+
+        VolumeStat stat = new VolumeStat();
+
+        if(!stat.read(path)) {
+            throw new IllegalArgumentException("Invalid path: " + path);
+        }
+
+        return stat;
+    }
+
+    //Builds a consistent snapshot from a single statfs call
+    private static StorageVolume createStorageVolume(String path, VolumeStat stat) {
+
+        long free = stat.freeBytes;
+        long total = stat.totalBytes;
+        long used = total - free;
         float usedPercentage = getStoragePercentage(used,total);
         float freePercentage = getStoragePercentage(free,total);
 
@@ -452,38 +510,210 @@ public final class Storage {
         return getDirectorySize(getAppDir(context));
     }
 
+    /**
+     * @param context context
+     * @param index index used to skip unchanged directories
+     * @return the size of the application directory in bytes
+     * */
+    public static long getAppDirBytes(Context context, @NonNull DirectorySizeIndex index){
+
+        if(context == null) {
+            throw new NullPointerException("Context cannot be null");
+        }
+
+        return index.getDirectorySize(getAppDir(context));
+    }
+
     /**
      * Gets the size(bytes) of a directory or file
      *
      * @param file file
-     * @return directory size in bytes
+     * @return directory size in bytes or 0 if the file is null
      * */
     public static long getDirectorySize(File file) {
 
-        long size = 0;
-        Queue<File> queue = new LinkedList<>();
+        if(file == null) {
+            return 0;
+        }
+
+        return DirectoryScanner.scan(file).getBytes();
+    }
+
+    /**
+     * Scans a directory or file reading the type and size of every entry
+     * with a single stat call. Symbolic links are not followed.
+     *
+     * @param file file
+     * @return scan result with the size in bytes, entry counts
+     * and the number of stat calls saved
+     * */
+    public static ScanResult scanDirectory(File file) {
 
-        queue.add(file);
+        if(file == null) {
+            throw new NullPointerException("File cannot be null");
+        }
 
-        while (!queue.isEmpty()) {
+        return DirectoryScanner.scan(file);
+    }
+
+    /**
+     * Scans a directory or file entering every directory only once.
+     * Directories are identified by their device and inode so symbolic
+     * link loops and bind mounts cannot make the scan unbounded.
+     *
+     * @param file file
+     * @param flags combination of {@link #SCAN_FOLLOW_LINKS},
+     *              {@link #SCAN_SAME_FILE_SYSTEM} and {@link #SCAN_DEDUPLICATE_HARD_LINKS}
+     * @return scan result with the size in bytes and entry counts
+     * */
+    public static ScanResult scanDirectory(File file, int flags) {
 
-            File f = queue.remove();
+        if(file == null) {
+            throw new NullPointerException("File cannot be null");
+        }
 
-            if(f != null && file.exists()) {
+        return DirectoryScanner.scan(file, flags);
+    }
 
-                size += f.length();
+    /**
+     * Estimates the size of a directory by sampling random paths of the tree.
+     * Use {@link DirectorySizeEstimator} directly to refine an estimate over time.
+     *
+     * @param file directory
+     * @param budgetMillis time budget in milliseconds
+     * @return estimated size with a 95% confidence interval
+     * */
+    public static SizeEstimate estimateDirectorySize(@NonNull File file, long budgetMillis) {
 
-                if(f.isDirectory()) {
+        if(file == null) {
+            throw new NullPointerException("File cannot be null");
+        }
 
-                    File[] subFiles = f.listFiles();
+        return new DirectorySizeEstimator(file).refine(budgetMillis);
+    }
 
-                    if(subFiles != null) {
-                        queue.addAll(Arrays.asList(subFiles));
-                    }
+    /**
+     * Scans a directory or file and collects the largest files, the largest
+     * directories and the size per file extension in the same pass.
+     * Directory sizes include their subdirectories, see
+     * {@link DirectoryReport#getLargestDirectories()}.
+     *
+     * @param file file
+     * @param count number of largest files and directories to keep
+     * @return report of the directory
+     * */
+    public static DirectoryReport analyzeDirectory(@NonNull File file, int count) {
+
+        if(file == null) {
+            throw new NullPointerException("File cannot be null");
+        }
+
+        if(count < 0) {
+            throw new IllegalArgumentException("Count cannot be negative");
+        }
+
+        return DirectoryAnalyzer.analyze(file, count);
+    }
+
+    /**
+     * Scans a directory or file on the passed executor. Progress updates
+     * are delivered at most every 250 milliseconds.
+     *
+     * @param file file
+     * @param executor executor the scan runs on
+     * @param callback callback notified on the main thread
+     * @return handle used to cancel the scan
+     * */
+    public static ScanHandle scanDirectoryAsync(@NonNull File file, @NonNull Executor executor,
+                                                @Nullable ScanCallback callback) {
+        return scanDirectoryAsync(file, executor, callback, DEFAULT_PROGRESS_INTERVAL_MILLIS);
+    }
+
+    /**
+     * Scans a directory or file on the passed executor.
+     *
+     * @param file file
+     * @param executor executor the scan runs on
+     * @param callback callback notified on the main thread
+     * @param progressIntervalMillis minimum time between progress updates
+     * @return handle used to cancel the scan
+     * */
+    public static ScanHandle scanDirectoryAsync(@NonNull final File file, @NonNull Executor executor,
+                                                @Nullable ScanCallback callback, long progressIntervalMillis) {
+
+        if(file == null) {
+            throw new NullPointerException("File cannot be null");
+        }
+
+        if(executor == null) {
+            throw new NullPointerException("Executor cannot be null");
+        }
+
+        final ScanHandle handle = new ScanHandle(callback, progressIntervalMillis);
+
+        executor.execute(new Runnable() {
+            @Override
+            public void run() {
+
+                if(handle.isCancelled()) {
+                    handle.onCancelled();
+                    return;
                 }
+
+                ScanResult result;
+
+                try {
+                    result = DirectoryScanner.scan(file, handle);
+                } catch (RuntimeException e) {
+                    handle.onError(e);
+                    return;
+                } catch (Error e) {
+                    //Reported so the handle is done, then rethrown to the executor
+                    handle.onError(e);
+                    throw e;
+                }
+
+                handle.onComplete(result);
             }
+        });
+
+        return handle;
+    }
+
+    /**
+     * Gets the size(bytes) of a directory or file using a work stealing pool.
+     * Sub directories are scanned in parallel and the result is the same
+     * as {@link #getDirectorySize(File)}. One pool is kept per parallelism
+     * and reused by later calls. Falls back to the serial walk when
+     * the parallelism is 1 or less, or on devices below Lollipop.
+     *
+     * @param file file
+     * @param parallelism number of threads used to scan the directory.
+     *                    Usually the number of available processors.
+     * @return directory size in bytes or 0 if the file is null
+     * */
+    public static long getDirectorySize(File file, int parallelism) {
+
+        if(file == null) {
+            return 0;
+        }
+
+        if(parallelism <= 1 || (StorageBackend.isAndroidRuntime()
+                && Build.VERSION.SDK_INT < Build.VERSION_CODES.LOLLIPOP)) {
+            return getDirectorySize(file);
+        }
+
+        String path = file.getAbsolutePath();
+        EntryStat stat = new EntryStat();
+
+        if(!stat.readRoot(path)) {
+            return 0;
+        }
+
+        if(stat.type != EntryStat.TYPE_DIRECTORY) {
+            return stat.size;
         }
 
-        return size;
+        return DirectorySizeTask.invoke(path, stat, parallelism);
     }
 }
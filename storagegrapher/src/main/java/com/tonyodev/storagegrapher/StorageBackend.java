@@ -0,0 +1,105 @@
+package com.tonyodev.storagegrapher;
+
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+
+/**
+ * Source of the file system information used by the scanning and volume
+ * code: entry attributes, directory listings and volume statistics.
+ * The platform backend is picked when it is first needed. Dalvik and ART
+ * use {@link AndroidStorageBackend}, any other virtual machine uses
+ * {@link JvmStorageBackend} so the same engine can run off device.
+ * {@link InMemoryStorageBackend} serves synthetic trees without touching
+ * the disk. Other sources, like a remote or virtual file system, can be
+ * plugged in by extending this class and passing an instance to
+ * {@link #setDefault(StorageBackend)}. Implementations are called from
+ * several threads at once and must be thread safe.
+ */
+public abstract class StorageBackend {
+
+    private static volatile StorageBackend defaultBackend;
+
+    protected StorageBackend() {
+    }
+
+    /**
+     * Reads the attributes of the entry at path into stat. Symbolic links
+     * are only followed when {@link EntryStat#isFollowingLinks()} is true.
+     * Implementations count the system calls they make with
+     * {@link EntryStat#addStatCalls(int)} and clear stat when the entry
+     * does not exist.
+     *
+     * @param path entry path
+     * @param stat holder the attributes are written to
+     * @return true if the entry exists
+     * */
+    protected abstract boolean readEntry(@NonNull String path, @NonNull EntryStat stat);
+
+    /**
+     * @param directory directory path
+     * @return entries of the directory or null if the directory cannot be read
+     * */
+    @Nullable
+    protected abstract DirectoryEntries openDirectory(@NonNull String directory);
+
+    /**
+     * Reads the size and free space of the volume a path is on into stat.
+     *
+     * @param path path on the volume
+     * @param stat holder the statistics are written to
+     * @return true if the volume could be read
+     * */
+    protected abstract boolean readVolume(@NonNull String path, @NonNull VolumeStat stat);
+
+    /**
+     * @return backend used by the library
+     * */
+    @NonNull
+    public static StorageBackend getDefault() {
+
+        StorageBackend backend = defaultBackend;
+
+        if(backend == null) {
+
+            synchronized (StorageBackend.class) {
+
+                if(defaultBackend == null) {
+                    defaultBackend = createPlatformBackend();
+                }
+
+                backend = defaultBackend;
+            }
+        }
+
+        return backend;
+    }
+
+    /**
+     * Replaces the backend used by the library. Holders that are already
+     * reading entries, like a running scan, keep their current backend.
+     *
+     * @param backend backend to use or null to restore the platform backend
+     * */
+    public static void setDefault(@Nullable StorageBackend backend) {
+
+        synchronized (StorageBackend.class) {
+            defaultBackend = backend;
+        }
+    }
+
+    /**
+     * @return true when running on Dalvik or ART
+     * */
+    static boolean isAndroidRuntime() {
+        return "Dalvik".equals(System.getProperty("java.vm.name"));
+    }
+
+    private static StorageBackend createPlatformBackend() {
+
+        if(isAndroidRuntime()) {
+            return new AndroidStorageBackend();
+        }
+
+        return new JvmStorageBackend();
+    }
+}
@@ -0,0 +1,30 @@
+package com.tonyodev.storagegrapher;
+
+/**
+ * This class holds the path and size of a
+ * file or directory found by a scan.
+ */
+public final class StorageEntry {
+
+    private final String path;
+    private final long bytes;
+
+    StorageEntry(String path, long bytes) {
+        this.path = path;
+        this.bytes = bytes;
+    }
+
+    /**
+     * @return  path of the file or directory
+     * */
+    public String getPath() {
+        return path;
+    }
+
+    /**
+     * @return  size in bytes. For directories this includes everything below it
+     * */
+    public long getBytes() {
+        return bytes;
+    }
+}
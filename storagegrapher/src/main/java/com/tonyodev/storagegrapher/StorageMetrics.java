@@ -0,0 +1,233 @@
+package com.tonyodev.storagegrapher;
+
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Opt in instrumentation of the scan, cache and statfs operations of the
+ * library. Nothing is measured until a listener is set with
+ * {@link #setListener(Listener)}. While no listener is set every call site
+ * costs a single volatile read.
+ *
+ * {@link Registry} is a listener that aggregates the events into counters
+ * and a statfs latency histogram that can be read at any time.
+ */
+public final class StorageMetrics {
+
+    /**
+     * Receives the events of the library. Called on the thread that did
+     * the work so implementations should be quick and thread safe.
+     * */
+    public interface Listener {
+
+        /**
+         * Called when a directory scan completes. Scans are the serial and
+         * parallel directory size scans, each {@link DirectorySizeIndex}
+         * call, each {@link DirectorySizeEstimator} refine that read the
+         * file system and the scans and refreshes of a
+         * {@link DirectorySizeTracker}. Partial scans only report the
+         * entries and bytes they read.
+         *
+         * @param path scanned directory
+         * @param entries number of files and directories visited
+         * @param bytes bytes summed by the scan
+         * @param statCalls stat system calls issued by the scan
+         * @param wallTimeNanos duration of the scan
+         * */
+        void onScan(@NonNull String path, long entries, long bytes, long statCalls, long wallTimeNanos);
+
+        /**
+         * Called after a cache was consulted
+         *
+         * @param cache {@link StorageMetrics#CACHE_DIRECTORY_INDEX} or {@link StorageMetrics#CACHE_VOLUME}
+         * @param hits number of lookups served from the cache
+         * @param misses number of lookups that had to read the file system
+         * */
+        void onCacheLookup(int cache, long hits, long misses);
+
+        /**
+         * Called after the statistics of a volume were read
+         *
+         * @param path volume path
+         * @param latencyNanos duration of the statfs call
+         * */
+        void onStatFs(@NonNull String path, long latencyNanos);
+    }
+
+    /** directories reused from a {@link DirectorySizeIndex}*/
+    public static final int CACHE_DIRECTORY_INDEX = 0;
+
+    /** snapshots served by the {@link StorageVolumeCache}*/
+    public static final int CACHE_VOLUME = 1;
+
+    /** number of buckets of the statfs latency histogram*/
+    public static final int HISTOGRAM_BUCKETS = 64;
+
+    private static final int CACHE_COUNT = 2;
+
+    static volatile Listener listener;
+
+    private StorageMetrics() {
+    }
+
+    /**
+     * @param metricsListener listener receiving the events or null to disable metrics
+     * */
+    public static void setListener(@Nullable Listener metricsListener) {
+        listener = metricsListener;
+    }
+
+    /**
+     * @return the current listener or null if metrics are disabled
+     * */
+    @Nullable
+    public static Listener getListener() {
+        return listener;
+    }
+
+    //floor(log2(nanos))
+    static int getBucket(long nanos) {
+        return 63 - Long.numberOfLeadingZeros(Math.max(1, nanos));
+    }
+
+    /**
+     * Listener that aggregates the events of the library into counters
+     * */
+    public static final class Registry implements Listener {
+
+        private final AtomicLong scans = new AtomicLong();
+        private final AtomicLong entries = new AtomicLong();
+        private final AtomicLong bytes = new AtomicLong();
+        private final AtomicLong statCalls = new AtomicLong();
+        private final AtomicLong scanTimeNanos = new AtomicLong();
+        private final AtomicLong statFsCalls = new AtomicLong();
+        private final AtomicLongArray cacheHits = new AtomicLongArray(CACHE_COUNT);
+        private final AtomicLongArray cacheMisses = new AtomicLongArray(CACHE_COUNT);
+        private final AtomicLongArray statFsLatencies = new AtomicLongArray(HISTOGRAM_BUCKETS);
+
+        @Override
+        public void onScan(@NonNull String path, long entries, long bytes, long statCalls, long wallTimeNanos) {
+            this.scans.incrementAndGet();
+            this.entries.addAndGet(entries);
+            this.bytes.addAndGet(bytes);
+            this.statCalls.addAndGet(statCalls);
+            this.scanTimeNanos.addAndGet(wallTimeNanos);
+        }
+
+        @Override
+        public void onCacheLookup(int cache, long hits, long misses) {
+
+            if(cache < 0 || cache >= CACHE_COUNT) {
+                return;
+            }
+
+            cacheHits.addAndGet(cache, hits);
+            cacheMisses.addAndGet(cache, misses);
+        }
+
+        @Override
+        public void onStatFs(@NonNull String path, long latencyNanos) {
+            statFsCalls.incrementAndGet();
+            statFsLatencies.incrementAndGet(getBucket(latencyNanos));
+        }
+
+        /**
+         * @return  number of completed scans
+         * */
+        public long getScanCount() {
+            return scans.get();
+        }
+
+        /**
+         * @return  files and directories visited by all scans
+         * */
+        public long getEntriesVisited() {
+            return entries.get();
+        }
+
+        /**
+         * @return  bytes summed by all scans
+         * */
+        public long getBytesSummed() {
+            return bytes.get();
+        }
+
+        /**
+         * @return  stat system calls issued by all scans
+         * */
+        public long getStatCalls() {
+            return statCalls.get();
+        }
+
+        /**
+         * @return  total wall time of all scans in nanoseconds
+         * */
+        public long getScanTimeNanos() {
+            return scanTimeNanos.get();
+        }
+
+        /**
+         * @return  number of statfs calls
+         * */
+        public long getStatFsCalls() {
+            return statFsCalls.get();
+        }
+
+        /**
+         * @return  hits of a cache
+         * */
+        public long getCacheHits(int cache) {
+            return cacheHits.get(cache);
+        }
+
+        /**
+         * @return  misses of a cache
+         * */
+        public long getCacheMisses(int cache) {
+            return cacheMisses.get(cache);
+        }
+
+        /**
+         * Bucket i counts the statfs calls that took between 2^i and 2^(i+1)
+         * nanoseconds. Bucket 0 also counts calls that took less than 1ns.
+         *
+         * @return  copy of the statfs latency histogram
+         * */
+        @NonNull
+        public long[] getStatFsLatencyHistogram() {
+
+            long[] histogram = new long[HISTOGRAM_BUCKETS];
+
+            for (int i = 0; i < HISTOGRAM_BUCKETS; i++) {
+                histogram[i] = statFsLatencies.get(i);
+            }
+
+            return histogram;
+        }
+
+        /**
+         * Sets every counter back to 0
+         * */
+        public void reset() {
+
+            scans.set(0);
+            entries.set(0);
+            bytes.set(0);
+            statCalls.set(0);
+            scanTimeNanos.set(0);
+            statFsCalls.set(0);
+
+            for (int i = 0; i < CACHE_COUNT; i++) {
+                cacheHits.set(i, 0);
+                cacheMisses.set(i, 0);
+            }
+
+            for (int i = 0; i < HISTOGRAM_BUCKETS; i++) {
+                statFsLatencies.set(i, 0);
+            }
+        }
+    }
+}
@@ -0,0 +1,185 @@
+package com.tonyodev.storagegrapher;
+
+import android.content.Context;
+import android.os.SystemClock;
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+
+import java.io.File;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Shared cache of Storage Volume snapshots. Reads are lock free and
+ * only call statfs when the cached snapshot is older than the time to
+ * live. All snapshots are dropped as soon as a volume is mounted or
+ * unmounted.
+ */
+public final class StorageVolumeCache {
+
+    /**
+     * Default time to live of a snapshot in milliseconds
+     * */
+    public static final long DEFAULT_TTL_MILLIS = 1000;
+
+    private static volatile StorageVolumeCache instance;
+
+    private final Context context;
+    private final long ttlMillis;
+    private final ConcurrentHashMap<String, Entry> entries = new ConcurrentHashMap<>();
+    private final MountEvents.Listener mountListener = new MountEvents.Listener() {
+        @Override
+        public void onMountChanged() {
+            invalidate();
+        }
+    };
+
+    //Snapshots taken before the last invalidation are never returned
+    private volatile int generation = 0;
+
+    /**
+     * Creates a cache with its own time to live. Call {@link #release()}
+     * when the cache is no longer used.
+     *
+     * @param context context
+     * @param ttlMillis time to live of a snapshot in milliseconds
+     * */
+    public StorageVolumeCache(@NonNull Context context, long ttlMillis) {
+
+        if(context == null) {
+            throw new NullPointerException("Context cannot be null");
+        }
+
+        this.context = context.getApplicationContext();
+        this.ttlMillis = ttlMillis;
+        MountEvents.addListener(this.context, mountListener);
+    }
+
+    /**
+     * @param context context
+     * @return shared cache using the default time to live
+     * */
+    @NonNull
+    public static StorageVolumeCache getInstance(@NonNull Context context) {
+
+        if(instance == null) {
+
+            synchronized (StorageVolumeCache.class) {
+
+                if(instance == null) {
+                    instance = new StorageVolumeCache(context, DEFAULT_TTL_MILLIS);
+                }
+            }
+        }
+
+        return instance;
+    }
+
+    /**
+     * @param path file path
+     * @return Storage Volume for the path, at most time to live milliseconds old
+     * */
+    @Nullable
+    public StorageVolume getStorageVolume(@NonNull String path) {
+
+        if(path == null) {
+            throw new NullPointerException("Path cannot be null");
+        }
+
+        int currentGeneration = generation;
+        long now = SystemClock.elapsedRealtime();
+        Entry entry = entries.get(path);
+
+        StorageMetrics.Listener metrics = StorageMetrics.listener;
+
+        if(entry != null && entry.generation == currentGeneration && now < entry.expiresAt) {
+
+            if(metrics != null) {
+                metrics.onCacheLookup(StorageMetrics.CACHE_VOLUME, 1, 0);
+            }
+
+            return entry.volume;
+        }
+
+        if(metrics != null) {
+            metrics.onCacheLookup(StorageMetrics.CACHE_VOLUME, 0, 1);
+        }
+
+        StorageVolume volume;
+
+        try {
+            volume = Storage.getStorageVolume(path);
+        } catch (IllegalArgumentException e) {
+            entries.remove(path);
+            return null;
+        }
+
+        entries.put(path, new Entry(volume, currentGeneration, now + ttlMillis));
+        return volume;
+    }
+
+    /**
+     * @return Storage Volume for primary storage directory
+     * */
+    @Nullable
+    public StorageVolume getPrimaryStorageVolume() {
+
+        File file = Storage.getPrimaryStorageDir();
+
+        if(file == null) {
+            return null;
+        }
+
+        return getStorageVolume(file.getAbsolutePath());
+    }
+
+    /**
+     * @return Storage Volume for secondary directory
+     * */
+    @Nullable
+    public StorageVolume getSecondaryStorageVolume() {
+
+        File file = Storage.getSecondaryStorageDir(context);
+
+        if(file == null) {
+            return null;
+        }
+
+        return getStorageVolume(file.getAbsolutePath());
+    }
+
+    /**
+     * Stops listening for mount events and drops all cached snapshots.
+     * Call it when a cache created with the constructor is no longer
+     * used. The shared instance is never released.
+     * */
+    public void release() {
+
+        if(this == instance) {
+            return;
+        }
+
+        MountEvents.removeListener(mountListener);
+        invalidate();
+    }
+
+    /**
+     * Drops all cached snapshots
+     * */
+    public synchronized void invalidate() {
+        generation++;
+        entries.clear();
+    }
+
+    private static final class Entry {
+
+        final StorageVolume volume;
+        final int generation;
+        final long expiresAt;
+
+        Entry(StorageVolume volume, int generation, long expiresAt) {
+            this.volume = volume;
+            this.generation = generation;
+            this.expiresAt = expiresAt;
+        }
+    }
+}
@@ -0,0 +1,520 @@
+package com.tonyodev.storagegrapher;
+
+import android.support.annotation.NonNull;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+
+/**
+ * Publishes Storage Volume snapshots to subscribers following the
+ * reactive streams contract of java.util.concurrent.Flow, which is not
+ * available on the supported api levels.
+ *
+ * All subscribers of a path share the samples of one {@link FreeSpaceSampler}
+ * volume, so adding subscribers does not add statfs calls. A subscriber
+ * only receives a snapshot when the free space moved by at least the
+ * minimum delta since the last snapshot it received. When a subscriber
+ * has no outstanding demand, or is still handling a signal, only the
+ * latest snapshot is kept and delivered on its next request.
+ *
+ * Signals of a subscriber are delivered one at a time and never while a
+ * lock of the publisher is held. They run on the executor passed to
+ * {@link #subscribe(String, Subscriber, Executor)}, or on the thread that
+ * produced them, which is the sampling thread for snapshots. Subscribers
+ * are completed when the publisher is closed or when the volume they
+ * follow is removed from the sampler. A subscriber that throws from a
+ * signal is cancelled.
+ */
+public final class StorageVolumePublisher {
+
+    /**
+     * Receives Storage Volume snapshots. Mirrors Flow.Subscriber
+     * */
+    public interface Subscriber {
+
+        void onSubscribe(@NonNull Subscription subscription);
+
+        void onNext(@NonNull StorageVolume volume);
+
+        void onError(@NonNull Throwable throwable);
+
+        void onComplete();
+    }
+
+    /**
+     * Link between the publisher and a subscriber. Mirrors Flow.Subscription
+     * */
+    public interface Subscription {
+
+        /**
+         * @param n number of additional snapshots the subscriber can receive
+         * */
+        void request(long n);
+
+        void cancel();
+    }
+
+    private static final Executor DIRECT_EXECUTOR = new Executor() {
+        @Override
+        public void execute(@NonNull Runnable command) {
+            command.run();
+        }
+    };
+
+    private final FreeSpaceSampler sampler;
+    private final long minDeltaBytes;
+
+    //Copied on write so the sampling thread can dispatch without locking
+    private volatile Map<String, VolumeSubscription[]> subscriptions = new HashMap<>();
+
+    //Paths the publisher holds a sampler reference on
+    private final Set<String> sampledPaths = new HashSet<>();
+    private boolean closed = false;
+
+    private final FreeSpaceSampler.OnSampleListener sampleListener = new FreeSpaceSampler.OnSampleListener() {
+        @Override
+        public void onSample(@NonNull String path, long timestamp, long freeBytes, long usedBytes) {
+
+            VolumeSubscription[] current = subscriptions.get(path);
+
+            if(current == null) {
+                return;
+            }
+
+            StorageVolume volume = null;
+
+            for (VolumeSubscription subscription : current) {
+
+                if(!subscription.accepts(freeBytes)) {
+                    continue;
+                }
+
+                if(volume == null) {
+                    long total = freeBytes + usedBytes;
+                    volume = new StorageVolume(path, freeBytes, usedBytes, total,
+                            Storage.getStoragePercentage(usedBytes, total),
+                            Storage.getStoragePercentage(freeBytes, total));
+                }
+
+                subscription.offer(volume);
+            }
+        }
+    };
+
+    private final FreeSpaceSampler.OnVolumeRemovedListener volumeRemovedListener =
+            new FreeSpaceSampler.OnVolumeRemovedListener() {
+                @Override
+                public void onVolumeRemoved(@NonNull String path) {
+                    completeSubscribers(path);
+                }
+            };
+
+    /**
+     * @param sampler sampler providing the volume samples. The publisher
+     *                adds and releases volumes as paths gain and lose subscribers,
+     *                so volumes shared with other owners keep being sampled.
+     *                Starting and stopping the sampler is left to the caller
+     * @param minDeltaBytes minimum change of free space that is published
+     * */
+    public StorageVolumePublisher(@NonNull FreeSpaceSampler sampler, long minDeltaBytes) {
+
+        if(sampler == null) {
+            throw new NullPointerException("Sampler cannot be null");
+        }
+
+        this.sampler = sampler;
+        this.minDeltaBytes = Math.max(0, minDeltaBytes);
+        sampler.addOnSampleListener(sampleListener);
+        sampler.addOnVolumeRemovedListener(volumeRemovedListener);
+    }
+
+    /**
+     * Subscribes to a volume. Snapshots are delivered on the sampling thread.
+     *
+     * @param path Storage Volume Path
+     * @param subscriber subscriber
+     * */
+    public void subscribe(@NonNull String path, @NonNull Subscriber subscriber) {
+        subscribe(path, subscriber, DIRECT_EXECUTOR);
+    }
+
+    /**
+     * Subscribes to a volume. Signals are delivered on the executor, one
+     * at a time, so a slow subscriber does not hold up the sampler.
+     *
+     * @param path Storage Volume Path
+     * @param subscriber subscriber
+     * @param executor executor the signals of the subscriber run on
+     * */
+    public void subscribe(@NonNull String path, @NonNull Subscriber subscriber, @NonNull Executor executor) {
+
+        if(path == null) {
+            throw new NullPointerException("Path cannot be null");
+        }
+
+        if(subscriber == null) {
+            throw new NullPointerException("Subscriber cannot be null");
+        }
+
+        if(executor == null) {
+            throw new NullPointerException("Executor cannot be null");
+        }
+
+        VolumeSubscription subscription = new VolumeSubscription(path, subscriber, executor);
+        boolean completed;
+
+        synchronized (this) {
+
+            completed = closed;
+
+            if(!completed) {
+
+                Map<String, VolumeSubscription[]> updated = new HashMap<>(subscriptions);
+                VolumeSubscription[] current = updated.get(path);
+
+                if(current == null) {
+                    //Shares the volume if another owner already samples it
+                    sampler.addVolume(path);
+                    sampledPaths.add(path);
+                    updated.put(path, new VolumeSubscription[]{subscription});
+                }else {
+                    VolumeSubscription[] list = new VolumeSubscription[current.length + 1];
+                    System.arraycopy(current, 0, list, 0, current.length);
+                    list[current.length] = subscription;
+                    updated.put(path, list);
+                }
+
+                subscriptions = updated;
+            }
+        }
+
+        if(completed) {
+            subscription.complete();
+        }else {
+            subscription.start();
+        }
+    }
+
+    /**
+     * Completes every subscriber and stops receiving samples
+     * */
+    public void close() {
+
+        Map<String, VolumeSubscription[]> current;
+        String[] paths;
+
+        synchronized (this) {
+
+            if(closed) {
+                return;
+            }
+
+            closed = true;
+            current = subscriptions;
+            subscriptions = new HashMap<>();
+            paths = sampledPaths.toArray(new String[sampledPaths.size()]);
+            sampledPaths.clear();
+        }
+
+        sampler.removeOnSampleListener(sampleListener);
+        sampler.removeOnVolumeRemovedListener(volumeRemovedListener);
+
+        //Released without the lock. Other publishers on the sampler lock themselves when notified
+        for (String path : paths) {
+            sampler.releaseVolume(path);
+        }
+
+        for (VolumeSubscription[] list : current.values()) {
+
+            for (VolumeSubscription subscription : list) {
+                subscription.complete();
+            }
+        }
+    }
+
+    //Another owner of the sampler removed the volume. No more samples will come
+    private void completeSubscribers(String path) {
+
+        VolumeSubscription[] current;
+
+        synchronized (this) {
+
+            current = subscriptions.get(path);
+
+            //A subscriber may have added the path again after it was removed
+            if(current == null || sampler.getHistory(path) != null) {
+                return;
+            }
+
+            Map<String, VolumeSubscription[]> updated = new HashMap<>(subscriptions);
+            updated.remove(path);
+            subscriptions = updated;
+            sampledPaths.remove(path);
+        }
+
+        for (VolumeSubscription subscription : current) {
+            subscription.complete();
+        }
+    }
+
+    private void remove(VolumeSubscription subscription) {
+
+        boolean release = false;
+
+        synchronized (this) {
+
+            VolumeSubscription[] current = subscriptions.get(subscription.path);
+
+            if(current == null) {
+                return;
+            }
+
+            int index = -1;
+
+            for (int i = 0; i < current.length; i++) {
+
+                if(current[i] == subscription) {
+                    index = i;
+                    break;
+                }
+            }
+
+            if(index == -1) {
+                return;
+            }
+
+            Map<String, VolumeSubscription[]> updated = new HashMap<>(subscriptions);
+
+            if(current.length == 1) {
+                updated.remove(subscription.path);
+                release = sampledPaths.remove(subscription.path);
+            }else {
+                VolumeSubscription[] list = new VolumeSubscription[current.length - 1];
+                System.arraycopy(current, 0, list, 0, index);
+                System.arraycopy(current, index + 1, list, index, current.length - index - 1);
+                updated.put(subscription.path, list);
+            }
+
+            subscriptions = updated;
+        }
+
+        if(release) {
+            sampler.releaseVolume(subscription.path);
+        }
+    }
+
+    private final class VolumeSubscription implements Subscription, Runnable {
+
+        final String path;
+        final Subscriber subscriber;
+        private final Executor executor;
+
+        private long demand;
+        private boolean subscribed;
+        private boolean cancelled;
+        private boolean completed;
+        private Throwable error;
+        private boolean draining;
+        private boolean hasEmitted;
+        private long lastEmittedFreeBytes;
+        private StorageVolume pending;
+
+        VolumeSubscription(String path, Subscriber subscriber, Executor executor) {
+            this.path = path;
+            this.subscriber = subscriber;
+            this.executor = executor;
+        }
+
+        synchronized boolean accepts(long freeBytes) {
+            return !cancelled && (!hasEmitted || Math.abs(freeBytes - lastEmittedFreeBytes) >= minDeltaBytes);
+        }
+
+        void start() {
+            schedule();
+        }
+
+        void offer(StorageVolume volume) {
+
+            synchronized (this) {
+
+                if(cancelled) {
+                    return;
+                }
+
+                pending = volume;
+            }
+
+            schedule();
+        }
+
+        @Override
+        public void request(long n) {
+
+            synchronized (this) {
+
+                if(cancelled || completed || error != null) {
+                    return;
+                }
+
+                if(n <= 0) {
+                    pending = null;
+                    error = new IllegalArgumentException("Request must be greater than 0");
+                }else {
+                    demand = demand + n < 0 ? Long.MAX_VALUE : demand + n;
+
+                    if(pending == null) {
+                        return;
+                    }
+                }
+            }
+
+            if(n <= 0) {
+                remove(this);
+            }
+
+            schedule();
+        }
+
+        @Override
+        public void cancel() {
+
+            synchronized (this) {
+
+                if(cancelled) {
+                    return;
+                }
+
+                cancelled = true;
+                pending = null;
+            }
+
+            remove(this);
+        }
+
+        void complete() {
+
+            synchronized (this) {
+
+                if(cancelled || completed || error != null) {
+                    return;
+                }
+
+                completed = true;
+            }
+
+            schedule();
+        }
+
+        private void schedule() {
+
+            synchronized (this) {
+
+                if(draining) {
+                    //The running drain picks up the new signal
+                    return;
+                }
+
+                draining = true;
+            }
+
+            try {
+                executor.execute(this);
+            } catch (RejectedExecutionException e) {
+
+                //Signals can no longer be delivered to the subscriber
+                synchronized (this) {
+                    draining = false;
+                    cancelled = true;
+                    pending = null;
+                }
+
+                remove(this);
+            }
+        }
+
+        //Delivers one signal at a time without holding the lock, so a
+        //subscriber may call back into its subscription from any signal
+        @Override
+        public void run() {
+
+            while (true) {
+
+                StorageVolume volume = null;
+                Throwable throwable = null;
+                boolean subscribe = false;
+
+                synchronized (this) {
+
+                    if(!subscribed) {
+                        subscribed = true;
+                        subscribe = true;
+                    }else if(cancelled) {
+                        draining = false;
+                        return;
+                    }else if(pending != null && demand > 0) {
+                        volume = pending;
+                        pending = null;
+
+                        if(demand != Long.MAX_VALUE) {
+                            demand--;
+                        }
+
+                        hasEmitted = true;
+                        lastEmittedFreeBytes = volume.getFreeSpace();
+                    }else if(error != null || completed) {
+                        throwable = error;
+                        cancelled = true;
+                        pending = null;
+                        draining = false;
+                    }else {
+                        draining = false;
+                        return;
+                    }
+                }
+
+                if(subscribe || volume != null) {
+                    deliver(subscribe, volume);
+                }else if(throwable != null) {
+                    subscriber.onError(throwable);
+                    return;
+                }else {
+                    subscriber.onComplete();
+                    return;
+                }
+            }
+        }
+
+        //A subscriber that throws is cancelled, so the drain is never left marked as running
+        private void deliver(boolean subscribe, StorageVolume volume) {
+
+            boolean delivered = false;
+
+            try {
+
+                if(subscribe) {
+                    subscriber.onSubscribe(this);
+                }else {
+                    subscriber.onNext(volume);
+                }
+
+                delivered = true;
+            } finally {
+
+                if(!delivered) {
+
+                    synchronized (this) {
+                        cancelled = true;
+                        pending = null;
+                        draining = false;
+                    }
+
+                    remove(this);
+                }
+            }
+        }
+    }
+}
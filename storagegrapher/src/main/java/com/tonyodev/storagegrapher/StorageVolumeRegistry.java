@@ -0,0 +1,358 @@
+package com.tonyodev.storagegrapher;
+
+import android.content.Context;
+import android.os.Build;
+import android.os.Environment;
+import android.os.storage.StorageManager;
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Discovers the mounted storage volumes of the device once and caches
+ * them. Environment variables, the StorageManager, the /storage directory
+ * and /proc/mounts are only read again after a volume is mounted or
+ * unmounted, or when {@link #refresh()} is called.
+ */
+public final class StorageVolumeRegistry {
+
+    private static final String PROC_MOUNTS = "/proc/mounts";
+    private static final String STORAGE_DIR = "/storage";
+
+    private static volatile StorageVolumeRegistry instance;
+
+    private final Context context;
+    private volatile Volumes volumes;
+
+    //Incremented by every refresh so a discovery that overlaps a refresh is not cached
+    private final AtomicInteger generation = new AtomicInteger();
+
+    private final MountEvents.Listener mountListener = new MountEvents.Listener() {
+        @Override
+        public void onMountChanged() {
+            refresh();
+        }
+    };
+
+    private StorageVolumeRegistry(Context context) {
+        this.context = context.getApplicationContext();
+        MountEvents.addListener(this.context, mountListener);
+    }
+
+    /**
+     * @param context context
+     * @return shared registry
+     * */
+    @NonNull
+    public static StorageVolumeRegistry getInstance(@NonNull Context context) {
+
+        if(context == null) {
+            throw new NullPointerException("Context cannot be null");
+        }
+
+        if(instance == null) {
+
+            synchronized (StorageVolumeRegistry.class) {
+
+                if(instance == null) {
+                    instance = new StorageVolumeRegistry(context);
+                }
+            }
+        }
+
+        return instance;
+    }
+
+    /**
+     * @return File - Primary storage directory. External SDCard. In some cases
+     * this can be the internal storage.
+     * */
+    @Nullable
+    public File getPrimaryStorageDir() {
+        return getVolumes().primary;
+    }
+
+    /**
+     * @return File = Secondary storage directory. eg. SD Card
+     * */
+    @Nullable
+    public File getSecondaryStorageDir() {
+        return getVolumes().secondary;
+    }
+
+    /**
+     * @return all mounted storage volume directories, primary first
+     * */
+    @NonNull
+    public List<File> getStorageDirs() {
+        return getVolumes().all;
+    }
+
+    /**
+     * Drops the cached volumes. They are discovered again on the next read.
+     * */
+    public void refresh() {
+        generation.incrementAndGet();
+        volumes = null;
+    }
+
+    private Volumes getVolumes() {
+
+        Volumes current = volumes;
+
+        if(current == null) {
+
+            synchronized (this) {
+
+                current = volumes;
+
+                if(current == null) {
+
+                    int discoveryGeneration = generation.get();
+                    current = discover();
+
+                    //Volumes changed while discovering. The result is used once and read again next time
+                    if(generation.get() == discoveryGeneration) {
+                        volumes = current;
+                    }
+                }
+            }
+        }
+
+        return current;
+    }
+
+    private Volumes discover() {
+
+        List<String> mountPoints = readStorageMountPoints();
+        File primary = Storage.getPrimaryStorageDir();
+        File secondary = findSecondaryStorageDir(mountPoints, primary);
+
+        Set<File> all = new LinkedHashSet<>();
+
+        if(primary != null) {
+            all.add(primary);
+        }
+
+        if(secondary != null) {
+            all.add(secondary);
+        }
+
+        for (String mountPoint : mountPoints) {
+            all.add(new File(mountPoint));
+        }
+
+        return new Volumes(primary, secondary,
+                Collections.unmodifiableList(new ArrayList<>(all)));
+    }
+
+    private File findSecondaryStorageDir(List<String> mountPoints, @Nullable File primary) {
+
+        String storage = System.getenv("SECONDARY_STORAGE");
+
+        if ((storage == null) || (storage.length() == 0)) {
+            storage = System.getenv("EXTERNAL_SDCARD_STORAGE");
+        }
+
+        if(storage != null) {
+            return new File(storage);
+        }
+
+        if(Build.VERSION.SDK_INT >= Build.VERSION_CODES.N) {
+
+            StorageManager storageManager = (StorageManager) context.getSystemService(Context.STORAGE_SERVICE);
+            List<android.os.storage.StorageVolume> volumes = storageManager.getStorageVolumes();
+
+            for (android.os.storage.StorageVolume volume : volumes) {
+
+                if(volume.getDescription(context).equalsIgnoreCase("SD card") && volume.isRemovable()) {
+                    return new File("/storage/" + volume.getUuid());
+                }
+            }
+        }else {
+
+            File storageDir = new File(STORAGE_DIR);
+
+            if(storageDir.exists() && storageDir.isDirectory()) {
+
+                File[] files = storageDir.listFiles();
+
+                if(files != null) {
+
+                    for (File file : files) {
+
+                        if(file != null && file.isDirectory()
+                                && Environment.MEDIA_MOUNTED.equals(getStorageState(file.getAbsoluteFile()))
+                                && isSdCardName(file.getName())) {
+                            return file;
+                        }
+                    }
+                }
+            }
+        }
+
+        //Mounted volumes the platform apis did not report. The primary volume is
+        //mounted below /storage too on some devices, eg. /storage/sdcard0
+        for (String mountPoint : mountPoints) {
+
+            File file = new File(mountPoint);
+
+            if(isSdCardName(file.getName()) && !isSameDirectory(file, primary)) {
+                return file;
+            }
+        }
+
+        return null;
+    }
+
+    private static boolean isSameDirectory(File file, @Nullable File other) {
+
+        if(other == null) {
+            return false;
+        }
+
+        if(file.getAbsolutePath().equals(other.getAbsolutePath())) {
+            return true;
+        }
+
+        try {
+            return file.getCanonicalPath().equals(other.getCanonicalPath());
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    //Same as EnvironmentCompat.getStorageState. Only framework calls are used so
+    //the discovery code also compiles against the platform jar alone
+    private static String getStorageState(File file) {
+
+        if(Build.VERSION.SDK_INT >= Build.VERSION_CODES.KITKAT) {
+            return Environment.getStorageState(file);
+        }
+
+        try {
+
+            String path = file.getCanonicalPath();
+            String externalPath = Environment.getExternalStorageDirectory().getCanonicalPath();
+
+            if(path.startsWith(externalPath)) {
+                return Environment.getExternalStorageState();
+            }
+        } catch (IOException e) {
+            //Unknown state
+        }
+
+        return Environment.MEDIA_UNKNOWN;
+    }
+
+    private static boolean isSdCardName(String name) {
+        return Storage.isNewSdNameFormat(name) || name.startsWith("sd");
+    }
+
+    //Mount points below /storage read from /proc/mounts, excluding the emulated views
+    private static List<String> readStorageMountPoints() {
+
+        List<String> mountPoints = new ArrayList<>();
+        BufferedReader reader = null;
+
+        try {
+
+            reader = new BufferedReader(new FileReader(PROC_MOUNTS));
+            String line;
+
+            while ((line = reader.readLine()) != null) {
+
+                String[] fields = line.split(" ");
+
+                if(fields.length < 3) {
+                    continue;
+                }
+
+                String mountPoint = decodeMountPoint(fields[1]);
+
+                if(mountPoint.startsWith(STORAGE_DIR + "/")
+                        && !mountPoint.startsWith(STORAGE_DIR + "/emulated")
+                        && !mountPoint.startsWith(STORAGE_DIR + "/self")
+                        && mountPoint.indexOf('/', STORAGE_DIR.length() + 1) == -1
+                        && !mountPoints.contains(mountPoint)) {
+                    mountPoints.add(mountPoint);
+                }
+            }
+        } catch (IOException e) {
+            //Not readable on this device. Platform apis are used instead
+        } finally {
+
+            if(reader != null) {
+
+                try {
+                    reader.close();
+                } catch (IOException e) {
+                    //Nothing to recover. The file was only read
+                }
+            }
+        }
+
+        return mountPoints;
+    }
+
+    //Spaces, tabs and back slashes are escaped as octal in /proc/mounts. eg \040
+    private static String decodeMountPoint(String field) {
+
+        if(field.indexOf('\\') == -1) {
+            return field;
+        }
+
+        StringBuilder builder = new StringBuilder(field.length());
+
+        for (int i = 0; i < field.length(); i++) {
+
+            char c = field.charAt(i);
+
+            if(c == '\\' && i + 3 < field.length() && isOctal(field, i + 1)) {
+                builder.append((char) Integer.parseInt(field.substring(i + 1, i + 4), 8));
+                i += 3;
+            }else {
+                builder.append(c);
+            }
+        }
+
+        return builder.toString();
+    }
+
+    private static boolean isOctal(String field, int start) {
+
+        for (int i = start; i < start + 3; i++) {
+
+            char c = field.charAt(i);
+
+            if(c < '0' || c > '7') {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    private static final class Volumes {
+
+        final File primary;
+        final File secondary;
+        final List<File> all;
+
+        Volumes(File primary, File secondary, List<File> all) {
+            this.primary = primary;
+            this.secondary = secondary;
+            this.all = all;
+        }
+    }
+}
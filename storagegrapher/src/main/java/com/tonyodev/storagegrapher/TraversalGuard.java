@@ -0,0 +1,88 @@
+package com.tonyodev.storagegrapher;
+
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * Visitor that keeps a walk bounded by the real data on a volume.
+ * Every directory is identified by its device and inode and is only
+ * entered once, which breaks symbolic link and bind mount cycles.
+ * Optionally the walk stays on the file system of the root and files
+ * with several hard links are only counted once.
+ *
+ * Below Lollipop device and inode numbers are not available. Directories
+ * are then identified by a hash of their canonical path and the file
+ * system and hard link checks are skipped.
+ */
+final class TraversalGuard implements DirectoryWalker.Visitor {
+
+    private final boolean sameFileSystem;
+    private final boolean deduplicateHardLinks;
+    private final LongPairSet visitedDirectories = new LongPairSet();
+    private final LongPairSet visitedLinks = new LongPairSet();
+
+    private boolean hasRoot = false;
+    private long rootDevice;
+
+    TraversalGuard(boolean sameFileSystem, boolean deduplicateHardLinks) {
+        this.sameFileSystem = sameFileSystem;
+        this.deduplicateHardLinks = deduplicateHardLinks;
+    }
+
+    @Override
+    public int preVisitDirectory(String path, EntryStat stat) {
+
+        if(!hasRoot) {
+            hasRoot = true;
+            rootDevice = stat.device;
+        }else if(sameFileSystem && stat.device != rootDevice) {
+            return DirectoryWalker.SKIP_SUBTREE;
+        }
+
+        boolean added;
+
+        if(stat.device == 0 && stat.inode == 0) {
+            added = visitedDirectories.add(0, canonicalPathHash(path));
+        }else {
+            added = visitedDirectories.add(stat.device, stat.inode);
+        }
+
+        return added ? DirectoryWalker.CONTINUE : DirectoryWalker.SKIP_SUBTREE;
+    }
+
+    @Override
+    public int visitFile(String path, EntryStat stat) {
+
+        if(deduplicateHardLinks && stat.links > 1 && stat.inode != 0
+                && !visitedLinks.add(stat.device, stat.inode)) {
+            return DirectoryWalker.SKIP_SUBTREE;
+        }
+
+        return DirectoryWalker.CONTINUE;
+    }
+
+    @Override
+    public void postVisitDirectory(String path, long bytes) {
+    }
+
+    //64 bit FNV-1a hash of the canonical path
+    private static long canonicalPathHash(String path) {
+
+        String canonicalPath;
+
+        try {
+            canonicalPath = new File(path).getCanonicalPath();
+        } catch (IOException e) {
+            canonicalPath = path;
+        }
+
+        long hash = 0xCBF29CE484222325L;
+
+        for (int i = 0; i < canonicalPath.length(); i++) {
+            hash ^= canonicalPath.charAt(i);
+            hash *= 0x100000001B3L;
+        }
+
+        return hash;
+    }
+}
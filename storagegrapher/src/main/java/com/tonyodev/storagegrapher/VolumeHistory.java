@@ -0,0 +1,190 @@
+package com.tonyodev.storagegrapher;
+
+import android.support.annotation.NonNull;
+
+/**
+ * Free and used space history of a single Storage Volume. Samples are
+ * stored in fixed size long ring buffers, one per resolution tier. Every
+ * raw sample is also averaged into minute buckets and every minute bucket
+ * into hour buckets, so older data is kept at a lower resolution without
+ * growing memory. An average is stored with the mean time of the samples
+ * it covers. Recording a sample does not allocate.
+ */
+public final class VolumeHistory {
+
+    /**
+     * Tier holding every raw sample
+     * */
+    public static final int TIER_RAW = 0;
+
+    /**
+     * Tier holding one minute averages
+     * */
+    public static final int TIER_MINUTE = 1;
+
+    /**
+     * Tier holding one hour averages
+     * */
+    public static final int TIER_HOUR = 2;
+
+    private static final long[] BUCKET_MILLIS = {0, 60 * 1000L, 60 * 60 * 1000L};
+
+    private final String path;
+    private final long[][] timestamps;
+    private final long[][] freeBytes;
+    private final long[][] usedBytes;
+    private final int[] heads = new int[BUCKET_MILLIS.length];
+    private final int[] counts = new int[BUCKET_MILLIS.length];
+
+    //Running averages of the bucket being filled for each tier above raw
+    private final long[] bucketStarts = new long[BUCKET_MILLIS.length];
+    private final long[] bucketOffsets = new long[BUCKET_MILLIS.length];
+    private final long[] bucketFree = new long[BUCKET_MILLIS.length];
+    private final long[] bucketUsed = new long[BUCKET_MILLIS.length];
+    private final int[] bucketCounts = new int[BUCKET_MILLIS.length];
+
+    VolumeHistory(String path, int rawCapacity, int minuteCapacity, int hourCapacity) {
+
+        this.path = path;
+        int[] capacities = {rawCapacity, minuteCapacity, hourCapacity};
+        timestamps = new long[capacities.length][];
+        freeBytes = new long[capacities.length][];
+        usedBytes = new long[capacities.length][];
+
+        for (int tier = 0; tier < capacities.length; tier++) {
+            timestamps[tier] = new long[capacities[tier]];
+            freeBytes[tier] = new long[capacities[tier]];
+            usedBytes[tier] = new long[capacities[tier]];
+        }
+    }
+
+    /**
+     * @return  Volume Path
+     * */
+    @NonNull
+    public String getPath() {
+        return path;
+    }
+
+    /**
+     * @param tier TIER_RAW, TIER_MINUTE or TIER_HOUR
+     * @return number of samples stored in the tier
+     * */
+    public synchronized int getSampleCount(int tier) {
+        return counts[tier];
+    }
+
+    /**
+     * @param tier TIER_RAW, TIER_MINUTE or TIER_HOUR
+     * @return maximum number of samples the tier holds
+     * */
+    public int getCapacity(int tier) {
+        return timestamps[tier].length;
+    }
+
+    /**
+     * Copies the samples of a tier, oldest first, into the passed arrays.
+     * Arrays shorter than the sample count receive the most recent samples.
+     *
+     * @param tier TIER_RAW, TIER_MINUTE or TIER_HOUR
+     * @param timestampsOut sample times in milliseconds
+     * @param freeBytesOut free bytes per sample
+     * @param usedBytesOut used bytes per sample
+     * @return number of samples copied
+     * */
+    public synchronized int read(int tier, @NonNull long[] timestampsOut,
+                                 @NonNull long[] freeBytesOut, @NonNull long[] usedBytesOut) {
+
+        int capacity = timestamps[tier].length;
+        int count = Math.min(counts[tier], Math.min(timestampsOut.length,
+                Math.min(freeBytesOut.length, usedBytesOut.length)));
+        int start = heads[tier] - count;
+
+        if(start < 0) {
+            start += capacity;
+        }
+
+        for (int i = 0; i < count; i++) {
+            int index = (start + i) % capacity;
+            timestampsOut[i] = timestamps[tier][index];
+            freeBytesOut[i] = freeBytes[tier][index];
+            usedBytesOut[i] = usedBytes[tier][index];
+        }
+
+        return count;
+    }
+
+    /**
+     * @return time of the most recent raw sample or 0 if there are no samples
+     * */
+    public synchronized long getLastTimestamp() {
+        return counts[TIER_RAW] == 0 ? 0 : timestamps[TIER_RAW][previous(TIER_RAW)];
+    }
+
+    /**
+     * @return free bytes of the most recent raw sample or 0 if there are no samples
+     * */
+    public synchronized long getLastFreeBytes() {
+        return counts[TIER_RAW] == 0 ? 0 : freeBytes[TIER_RAW][previous(TIER_RAW)];
+    }
+
+    /**
+     * @return used bytes of the most recent raw sample or 0 if there are no samples
+     * */
+    public synchronized long getLastUsedBytes() {
+        return counts[TIER_RAW] == 0 ? 0 : usedBytes[TIER_RAW][previous(TIER_RAW)];
+    }
+
+    synchronized void record(long timestamp, long free, long used) {
+        add(TIER_RAW, timestamp, free, used);
+    }
+
+    private void add(int tier, long timestamp, long free, long used) {
+
+        int capacity = timestamps[tier].length;
+
+        if(capacity > 0) {
+            int head = heads[tier];
+            timestamps[tier][head] = timestamp;
+            freeBytes[tier][head] = free;
+            usedBytes[tier][head] = used;
+            heads[tier] = (head + 1) % capacity;
+            counts[tier] = Math.min(counts[tier] + 1, capacity);
+        }
+
+        int next = tier + 1;
+
+        if(next >= BUCKET_MILLIS.length) {
+            return;
+        }
+
+        long bucketMillis = BUCKET_MILLIS[next];
+
+        if(bucketCounts[next] > 0 && timestamp - bucketStarts[next] >= bucketMillis) {
+
+            long averageTimestamp = bucketStarts[next] + bucketOffsets[next] / bucketCounts[next];
+            long averageFree = bucketFree[next] / bucketCounts[next];
+            long averageUsed = bucketUsed[next] / bucketCounts[next];
+            bucketCounts[next] = 0;
+            bucketOffsets[next] = 0;
+            bucketFree[next] = 0;
+            bucketUsed[next] = 0;
+            add(next, averageTimestamp, averageFree, averageUsed);
+        }
+
+        if(bucketCounts[next] == 0) {
+            bucketStarts[next] = timestamp - (timestamp % bucketMillis);
+        }
+
+        //Offsets from the bucket start keep the sum of the times small
+        bucketOffsets[next] += timestamp - bucketStarts[next];
+        bucketFree[next] += free;
+        bucketUsed[next] += used;
+        bucketCounts[next]++;
+    }
+
+    private int previous(int tier) {
+        int head = heads[tier] - 1;
+        return head < 0 ? head + timestamps[tier].length : head;
+    }
+}
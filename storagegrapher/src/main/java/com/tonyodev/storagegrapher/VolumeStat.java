@@ -0,0 +1,99 @@
+package com.tonyodev.storagegrapher;
+
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+
+/**
+ * Reusable holder for the statistics of a Storage Volume. A backend may
+ * keep a handle in the holder, like a StatFs, so reading the same volume
+ * again does not allocate.
+ */
+public final class VolumeStat {
+
+    private final StorageBackend backend;
+
+    long totalBytes;
+    long freeBytes;
+
+    /** backend specific object reused between reads*/
+    Object handle;
+
+    /** path the handle was created for*/
+    String handlePath;
+
+    VolumeStat() {
+        this(StorageBackend.getDefault());
+    }
+
+    VolumeStat(StorageBackend backend) {
+        this.backend = backend;
+    }
+
+    /**
+     * @param path path on the volume
+     * @return true if the volume could be read
+     * */
+    boolean read(String path) {
+
+        StorageMetrics.Listener metrics = StorageMetrics.listener;
+        boolean read;
+
+        if(metrics == null) {
+            read = backend.readVolume(path, this);
+        }else {
+            long startNanos = System.nanoTime();
+            read = backend.readVolume(path, this);
+            metrics.onStatFs(path, System.nanoTime() - startNanos);
+        }
+
+        if(read) {
+            return true;
+        }
+
+        clear();
+        return false;
+    }
+
+    /**
+     * Sets the statistics of the volume. Called by backends.
+     *
+     * @param totalBytes volume size
+     * @param freeBytes free space of the volume
+     * */
+    public void set(long totalBytes, long freeBytes) {
+        this.totalBytes = totalBytes;
+        this.freeBytes = freeBytes;
+    }
+
+    /**
+     * @param path path on the volume
+     * @return handle a backend stored for the path or null
+     * */
+    @Nullable
+    public Object getHandle(@NonNull String path) {
+        return path.equals(handlePath) ? handle : null;
+    }
+
+    /**
+     * Keeps a backend specific object, like a StatFs, for the next read of
+     * the same path.
+     *
+     * @param path path on the volume
+     * @param handle object to reuse
+     * */
+    public void setHandle(@NonNull String path, @Nullable Object handle) {
+        this.handlePath = path;
+        this.handle = handle;
+    }
+
+    long getUsedBytes() {
+        return totalBytes - freeBytes;
+    }
+
+    private void clear() {
+        totalBytes = 0;
+        freeBytes = 0;
+        handle = null;
+        handlePath = null;
+    }
+}
@@ -0,0 +1,60 @@
+package com.tonyodev.storagegrapher.widget;
+
+import android.graphics.Typeface;
+import android.support.annotation.ColorInt;
+import android.support.annotation.DrawableRes;
+import android.support.annotation.Nullable;
+
+import com.tonyodev.storagegrapher.R;
+
+/**
+ * Immutable legend style of a {@link StorageGraphView}. Resources are
+ * resolved once by the setters of the graph, so styling a legend view
+ * does not read Resources. A value of -1 leaves the attribute of the
+ * legend view unchanged.
+ */
+final class LegendStyle {
+
+    static final LegendStyle DEFAULT = new LegendStyle(R.drawable.small_circle, -1, -1, -1,
+            null, Typeface.NORMAL);
+
+    @DrawableRes
+    final int drawable;
+    @ColorInt
+    final int textColor;
+    final float textSize;
+    final int drawablePadding;
+    @Nullable
+    final Typeface typeface;
+    final int typefaceStyle;
+
+    private LegendStyle(@DrawableRes int drawable, @ColorInt int textColor, float textSize,
+                        int drawablePadding, @Nullable Typeface typeface, int typefaceStyle) {
+        this.drawable = drawable;
+        this.textColor = textColor;
+        this.textSize = textSize;
+        this.drawablePadding = drawablePadding;
+        this.typeface = typeface;
+        this.typefaceStyle = typefaceStyle;
+    }
+
+    LegendStyle withDrawable(@DrawableRes int drawable) {
+        return new LegendStyle(drawable, textColor, textSize, drawablePadding, typeface, typefaceStyle);
+    }
+
+    LegendStyle withTextColor(@ColorInt int textColor) {
+        return new LegendStyle(drawable, textColor, textSize, drawablePadding, typeface, typefaceStyle);
+    }
+
+    LegendStyle withTextSize(float textSize) {
+        return new LegendStyle(drawable, textColor, textSize, drawablePadding, typeface, typefaceStyle);
+    }
+
+    LegendStyle withDrawablePadding(int drawablePadding) {
+        return new LegendStyle(drawable, textColor, textSize, drawablePadding, typeface, typefaceStyle);
+    }
+
+    LegendStyle withTypeface(@Nullable Typeface typeface, int typefaceStyle) {
+        return new LegendStyle(drawable, textColor, textSize, drawablePadding, typeface, typefaceStyle);
+    }
+}
@@ -0,0 +1,200 @@
+package com.tonyodev.storagegrapher.widget;
+
+import android.support.annotation.Nullable;
+
+/**
+ * Interpolates a formatted legend value, like "1.25 GB", between two
+ * texts. Both texts must have the same text around a single number, so a
+ * change of unit is not interpolated. Frames are written into a reused
+ * char buffer with the decimals and decimal separator of the target text,
+ * so updating a frame does not allocate.
+ */
+final class LegendValueInterpolator {
+
+    private static final long[] POWERS_OF_TEN = {1, 10, 100, 1000, 10000, 100000, 1000000};
+
+    private char[] buffer = new char[0];
+    private int length;
+
+    private boolean animatable;
+    private String target;
+    private int prefixLength;
+    private int suffixStart;
+    private int decimals;
+    private char separator;
+    private double fromValue;
+    private double toValue;
+
+    //Parse results of the last number found. Index 0 for the start text, 1 for the target text
+    private final int[] numberStarts = new int[2];
+    private final int[] numberEnds = new int[2];
+    private final int[] numberDecimals = new int[2];
+    private final char[] numberSeparators = new char[2];
+    private final double[] numberValues = new double[2];
+
+    /**
+     * @param from text shown at the start
+     * @param to text shown at the end
+     * @return true if the texts can be interpolated
+     * */
+    boolean set(@Nullable String from, @Nullable String to) {
+
+        animatable = from != null && to != null && findNumber(from, 0) && findNumber(to, 1)
+                && numberStarts[0] == numberStarts[1]
+                && from.regionMatches(0, to, 0, numberStarts[1])
+                && from.length() - numberEnds[0] == to.length() - numberEnds[1]
+                && from.regionMatches(numberEnds[0], to, numberEnds[1], to.length() - numberEnds[1]);
+
+        if(!animatable) {
+            target = null;
+            return false;
+        }
+
+        target = to;
+        prefixLength = numberStarts[1];
+        suffixStart = numberEnds[1];
+        decimals = numberDecimals[1];
+        separator = numberSeparators[1];
+        fromValue = numberValues[0];
+        toValue = numberValues[1];
+
+        //Widest frame: every digit of the larger value plus the separator and decimals
+        long largest = (long) Math.ceil(Math.max(fromValue, toValue));
+        int capacity = prefixLength + countDigits(largest) + 1 + decimals + to.length() - suffixStart;
+
+        if(buffer.length < capacity) {
+            buffer = new char[capacity];
+        }
+
+        return true;
+    }
+
+    /**
+     * Stops interpolating until set is called again
+     * */
+    void reset() {
+        animatable = false;
+        target = null;
+    }
+
+    /**
+     * @return true if the last texts passed to set can be interpolated
+     * */
+    boolean isAnimatable() {
+        return animatable;
+    }
+
+    /**
+     * Writes the text at the fraction into the buffer
+     *
+     * @param fraction animation fraction from 0 to 1
+     * */
+    void update(float fraction) {
+
+        if(!animatable) {
+            return;
+        }
+
+        double value = fromValue + (toValue - fromValue) * fraction;
+        long scaled = Math.round(value * POWERS_OF_TEN[decimals]);
+        long integerPart = scaled / POWERS_OF_TEN[decimals];
+        long fractionPart = scaled % POWERS_OF_TEN[decimals];
+
+        target.getChars(0, prefixLength, buffer, 0);
+        int position = prefixLength + countDigits(integerPart);
+
+        for (int x = position - 1; x >= prefixLength; x--) {
+            buffer[x] = (char) ('0' + integerPart % 10);
+            integerPart /= 10;
+        }
+
+        if(decimals > 0) {
+
+            buffer[position] = separator;
+            position += decimals;
+
+            for (int x = position; x > position - decimals; x--) {
+                buffer[x] = (char) ('0' + fractionPart % 10);
+                fractionPart /= 10;
+            }
+
+            position++;
+        }
+
+        target.getChars(suffixStart, target.length(), buffer, position);
+        length = position + target.length() - suffixStart;
+    }
+
+    char[] getBuffer() {
+        return buffer;
+    }
+
+    int getLength() {
+        return length;
+    }
+
+    //Finds the first number of the text. A number has at most one decimal separator
+    private boolean findNumber(String text, int index) {
+
+        int start = 0;
+
+        while (start < text.length() && !Character.isDigit(text.charAt(start))) {
+            start++;
+        }
+
+        if(start == text.length()) {
+            return false;
+        }
+
+        int end = start;
+        int separatorIndex = -1;
+        double value = 0;
+
+        while (end < text.length()) {
+
+            char c = text.charAt(end);
+
+            if(c >= '0' && c <= '9') {
+                value = value * 10 + (c - '0');
+            }else if((c == '.' || c == ',') && separatorIndex == -1 && end + 1 < text.length()
+                    && Character.isDigit(text.charAt(end + 1))) {
+                separatorIndex = end;
+            }else {
+                break;
+            }
+
+            end++;
+        }
+
+        int decimalCount = separatorIndex == -1 ? 0 : end - separatorIndex - 1;
+
+        //Grouped or overly precise numbers are not interpolated
+        if(decimalCount >= POWERS_OF_TEN.length
+                || (separatorIndex != -1 && end < text.length() && isSeparatorOrDigit(text.charAt(end)))) {
+            return false;
+        }
+
+        numberStarts[index] = start;
+        numberEnds[index] = end;
+        numberDecimals[index] = decimalCount;
+        numberSeparators[index] = separatorIndex == -1 ? '.' : text.charAt(separatorIndex);
+        numberValues[index] = value / POWERS_OF_TEN[decimalCount];
+        return true;
+    }
+
+    private static boolean isSeparatorOrDigit(char c) {
+        return c == '.' || c == ',' || Character.isDigit(c);
+    }
+
+    private static int countDigits(long value) {
+
+        int digits = 1;
+
+        while (value >= 10) {
+            value /= 10;
+            digits++;
+        }
+
+        return digits;
+    }
+}
@@ -0,0 +1,55 @@
+package com.tonyodev.storagegrapher.widget;
+
+import android.support.annotation.NonNull;
+
+import com.tonyodev.storagegrapher.StorageGraphBar;
+
+/**
+ * Compares a plotted bar with the bar replacing it at the same position,
+ * so an update only touches the views whose data changed. Weights are
+ * compared against the views because an animation may have stopped
+ * between two bars.
+ */
+final class StorageGraphBarDiff {
+
+    static final int NONE = 0;
+    static final int COLOR = 1;
+    static final int TITLE = 1 << 1;
+    static final int SUBTITLE = 1 << 2;
+
+    private StorageGraphBarDiff() {
+    }
+
+    /**
+     * @param oldBar bar currently plotted
+     * @param bar bar replacing it
+     * @return COLOR, TITLE and SUBTITLE flags of what changed or NONE
+     * */
+    static int getChanges(@NonNull StorageGraphBar oldBar, @NonNull StorageGraphBar bar) {
+
+        if(oldBar == bar) {
+            return NONE;
+        }
+
+        int changes = NONE;
+
+        if(oldBar.getColor() != bar.getColor()) {
+            changes |= COLOR;
+        }
+
+        if(!equals(oldBar.getLegendTitle(), bar.getLegendTitle())) {
+            changes |= TITLE;
+        }
+
+        if(!equals(oldBar.getLegendSubtitle(), bar.getLegendSubtitle())) {
+            changes |= SUBTITLE;
+        }
+
+        return changes;
+    }
+
+    //TextUtils.equals without the framework, so the diff also runs on the JVM
+    private static boolean equals(String a, String b) {
+        return a == null ? b == null : a.equals(b);
+    }
+}
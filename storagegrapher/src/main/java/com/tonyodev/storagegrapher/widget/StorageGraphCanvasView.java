@@ -0,0 +1,554 @@
+package com.tonyodev.storagegrapher.widget;
+
+import android.content.Context;
+import android.content.res.ColorStateList;
+import android.content.res.TypedArray;
+import android.graphics.Canvas;
+import android.graphics.Paint;
+import android.graphics.RectF;
+import android.graphics.Typeface;
+import android.graphics.drawable.Drawable;
+import android.support.annotation.ColorInt;
+import android.support.annotation.ColorRes;
+import android.support.annotation.DimenRes;
+import android.support.annotation.DrawableRes;
+import android.support.annotation.Nullable;
+import android.support.v4.content.ContextCompat;
+import android.support.v4.view.ViewCompat;
+import android.text.Layout;
+import android.text.StaticLayout;
+import android.text.TextPaint;
+import android.text.TextUtils;
+import android.util.AttributeSet;
+import android.util.TypedValue;
+import android.view.View;
+
+import com.tonyodev.storagegrapher.R;
+import com.tonyodev.storagegrapher.StorageGraphBar;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Draws the same graph as {@link StorageGraphView} without child views.
+ * The title, bars and legend are laid out once per size or content change
+ * into rects and text layouts and drawn in a single onDraw pass. A graph
+ * of n bars is one view, where StorageGraphView is 5 + 4n views: itself,
+ * the root, title, graph and legend layouts, a view per bar and a legend
+ * layout with two TextViews per bar.
+ *
+ * Text defaults to the theme's textAppearanceSmall, like the TextViews of
+ * StorageGraphView, and the graph is mirrored in right to left layouts.
+ */
+public class StorageGraphCanvasView extends View {
+
+    //Dimensions of storage_graph_view.xml and storage_graph_legend.xml in dp
+    private static final float CONTENT_PADDING_DP = 8;
+    private static final float SECTION_MARGIN_DP = 8;
+    private static final float DEFAULT_BAR_HEIGHT_DP = 10;
+    private static final float LEGEND_DRAWABLE_PADDING_DP = 8;
+    private static final float LEGEND_SUBKEY_MARGIN_DP = 18;
+
+    //Title size of storage_graph_view.xml
+    private static final float DEFAULT_TITLE_TEXT_SIZE_SP = 15;
+
+    //Text size of textAppearanceSmall. Used when the theme does not define it
+    private static final float FALLBACK_TEXT_SIZE_SP = 14;
+
+    //Sorted as obtainStyledAttributes requires
+    private static final int[] TEXT_APPEARANCE_ATTRS = {android.R.attr.textSize, android.R.attr.textColor};
+
+    private final float mDensity;
+    private final int mContentPadding;
+    private final int mSectionMargin;
+    private final int mLegendSubKeyMargin;
+
+    private final TextPaint mTitlePaint = new TextPaint(Paint.ANTI_ALIAS_FLAG);
+    private final TextPaint mLegendPaint = new TextPaint(Paint.ANTI_ALIAS_FLAG);
+    private final Paint mBarPaint = new Paint();
+
+    private final List<StorageGraphBar> mBars = new ArrayList<>();
+    private final List<Drawable> mLegendDrawables = new ArrayList<>();
+
+    private String mTitleText;
+    private boolean mTitleVisible = true;
+    private int mBarHeight;
+
+    @DrawableRes
+    private int mLegendDrawable = R.drawable.small_circle;
+    private int mLegendPadding;
+
+    //Layout computed for mLayoutWidth. Rebuilt when the width or the content changes
+    private boolean mLayoutValid = false;
+    private int mLayoutWidth = -1;
+    private int mLayoutHeight;
+    private StaticLayout mTitleLayout;
+    private RectF[] mBarRects = new RectF[0];
+    private StaticLayout[] mKeyLayouts = new StaticLayout[0];
+    private StaticLayout[] mSubKeyLayouts = new StaticLayout[0];
+    private float[] mLegendLefts = new float[0];
+    private float mLegendTop;
+    private int mColumnWidth;
+    private boolean mRtl;
+
+    public StorageGraphCanvasView(Context context) {
+        this(context,null);
+    }
+
+    public StorageGraphCanvasView(Context context, @Nullable AttributeSet attrs) {
+        this(context,attrs,0);
+    }
+
+    public StorageGraphCanvasView(Context context, @Nullable AttributeSet attrs, int defStyleAttr) {
+        super(context,attrs,defStyleAttr);
+
+        mDensity = context.getResources().getDisplayMetrics().density;
+        mContentPadding = dpToPixels(CONTENT_PADDING_DP);
+        mSectionMargin = dpToPixels(SECTION_MARGIN_DP);
+        mLegendSubKeyMargin = dpToPixels(LEGEND_SUBKEY_MARGIN_DP);
+        mLegendPadding = dpToPixels(LEGEND_DRAWABLE_PADDING_DP);
+        mBarHeight = dpToPixels(DEFAULT_BAR_HEIGHT_DP);
+
+        setDefaultTextAppearance(context);
+        setStyle(attrs);
+    }
+
+    //Resolves the text appearance the TextViews of StorageGraphView get from the theme
+    private void setDefaultTextAppearance(Context context) {
+
+        float textSize = spToPixels(FALLBACK_TEXT_SIZE_SP);
+        ColorStateList textColor = null;
+        TypedArray theme = context.obtainStyledAttributes(new int[]{android.R.attr.textAppearanceSmall});
+        int appearance = theme.getResourceId(0, 0);
+        theme.recycle();
+
+        if(appearance != 0) {
+
+            TypedArray attributes = context.obtainStyledAttributes(appearance, TEXT_APPEARANCE_ATTRS);
+            textSize = attributes.getDimension(0, textSize);
+            textColor = attributes.getColorStateList(1);
+            attributes.recycle();
+        }
+
+        mTitlePaint.setTextSize(spToPixels(DEFAULT_TITLE_TEXT_SIZE_SP));
+        mLegendPaint.setTextSize(textSize);
+
+        if(textColor != null) {
+            mTitlePaint.setColor(textColor.getDefaultColor());
+            mLegendPaint.setColor(textColor.getDefaultColor());
+        }
+    }
+
+    private void setStyle(AttributeSet attributeSet) {
+
+        TypedArray styledAttributes = null;
+
+        try {
+
+            styledAttributes = getContext().obtainStyledAttributes(attributeSet, R.styleable.StorageGraphView);
+
+            if(styledAttributes != null) {
+
+                float titleTextSize = styledAttributes.getDimension(R.styleable.StorageGraphView_titleTextSize,-1);
+
+                if(titleTextSize != -1) {
+                    mTitlePaint.setTextSize(titleTextSize);
+                }
+
+                mTitlePaint.setColor(styledAttributes.getColor(R.styleable.StorageGraphView_titleColor,
+                        mTitlePaint.getColor()));
+                mTitleText = styledAttributes.getString(R.styleable.StorageGraphView_titleText);
+
+                mLegendDrawable = styledAttributes.getResourceId(R.styleable.StorageGraphView_legendDrawable,
+                        R.drawable.small_circle);
+
+                float legendTextSize = styledAttributes.getDimension(R.styleable.StorageGraphView_legendTextSize,-1);
+
+                if(legendTextSize != -1) {
+                    mLegendPaint.setTextSize(legendTextSize);
+                }
+
+                mLegendPaint.setColor(styledAttributes.getColor(R.styleable.StorageGraphView_legendTextColor,
+                        mLegendPaint.getColor()));
+            }
+        } finally {
+
+            if(styledAttributes != null) {
+                styledAttributes.recycle();
+            }
+        }
+    }
+
+    /**
+     * Sets the title for the StorageGraphCanvasView
+     *
+     * @param title title
+     * */
+    public void setTitle(@Nullable String title) {
+        this.mTitleText = title;
+        invalidateLayout();
+    }
+
+    /**
+     * Sets the title text size for the StorageGraphCanvasView
+     *
+     * @param size dimension resource
+     * */
+    public void setTitleTextSize(@DimenRes int size) {
+        this.mTitlePaint.setTextSize(getResources().getDimension(size));
+        invalidateLayout();
+    }
+
+    /**
+     * Sets the typeface for the StorageGraphCanvasView title
+     *
+     * @param typeFace typeface
+     * */
+    public void setTitleTypeFace(Typeface typeFace) {
+        setTitleTypeFace(typeFace,Typeface.NORMAL);
+    }
+
+    /**
+     * Sets the typeface for the StorageGraphCanvasView title
+     *
+     * @param typeFace typeface
+     * @param style style
+     * */
+    public void setTitleTypeFace(Typeface typeFace,int style) {
+        setTypeface(mTitlePaint,typeFace,style);
+        invalidateLayout();
+    }
+
+    /**
+     * Sets the title color for the StorageGraphCanvasView
+     *
+     * @param color color resource
+     * */
+    public void setTitleTextColor(@ColorRes int color) {
+        this.mTitlePaint.setColor(ContextCompat.getColor(getContext(),color));
+        invalidate();
+    }
+
+    /**
+     * hides the title for the StorageGraphCanvasView
+     * */
+    public void hideTitle() {
+        this.mTitleVisible = false;
+        invalidateLayout();
+    }
+
+    /**
+     * shows the title for the StorageGraphCanvasView
+     * */
+    public void showTitle() {
+        this.mTitleVisible = true;
+        invalidateLayout();
+    }
+
+    /**
+     * Sets the bar height for the bar graph
+     *
+     * @param height resource dimension
+     * */
+    public void setBarHeight(@DimenRes int height) {
+        this.mBarHeight = getResources().getDimensionPixelSize(height);
+        invalidateLayout();
+    }
+
+    /**
+     * Sets the drawable used in the legend of every bar
+     *
+     * @param drawable drawable resource
+     * */
+    public void setLegendDrawable(@DrawableRes int drawable) {
+
+        if(drawable == mLegendDrawable) {
+            return;
+        }
+
+        this.mLegendDrawable = drawable;
+
+        for (int i = 0; i < mBars.size(); i++) {
+            mLegendDrawables.set(i, createLegendDrawable(mBars.get(i).getColor()));
+        }
+
+        invalidateLayout();
+    }
+
+    /**
+     * Sets the legend drawable padding
+     *
+     * @param padding resource dimension
+     * */
+    public void setLegendDrawablePadding(@DimenRes int padding) {
+        this.mLegendPadding = (int) getResources().getDimension(padding);
+        invalidateLayout();
+    }
+
+    /**
+     * Sets the legend text color
+     *
+     * @param color resource color
+     * */
+    public void setLegendTextColor(@ColorRes int color) {
+        this.mLegendPaint.setColor(ContextCompat.getColor(getContext(),color));
+        invalidate();
+    }
+
+    /**
+     * Sets the legend text size
+     *
+     * @param size resource dimension
+     * */
+    public void setLegendTextSize(@DimenRes int size) {
+        this.mLegendPaint.setTextSize(getResources().getDimension(size));
+        invalidateLayout();
+    }
+
+    /**
+     * Sets the typeface for legend text
+     *
+     * @param typeFace typeface
+     * */
+    public void setLegendTypeFace(@Nullable Typeface typeFace) {
+        setLegendTypeFace(typeFace,Typeface.NORMAL);
+    }
+
+    /**
+     * Sets the typeface and style for legend text
+     *
+     * @param typeFace typeface
+     * @param style  style
+     * */
+    public void setLegendTypeFace(@Nullable Typeface typeFace,int style) {
+        setTypeface(mLegendPaint,typeFace,style);
+        invalidateLayout();
+    }
+
+    /**
+     * Adds StorageGraphBar items to the graph.
+     * Bars a plotted based on the order they were entered
+     *
+     * @param bars StorageGraphBar items
+     * */
+    public void addBars(StorageGraphBar... bars) {
+
+        if(bars == null) {
+            return;
+        }
+
+        for (StorageGraphBar bar : bars) {
+
+            if(bar == null) {
+                continue;
+            }
+
+            mBars.add(bar);
+            mLegendDrawables.add(createLegendDrawable(bar.getColor()));
+        }
+
+        invalidateLayout();
+    }
+
+    /**
+     * Clears all plotted data from the graph
+     * */
+    public void clear() {
+        mBars.clear();
+        mLegendDrawables.clear();
+        invalidateLayout();
+    }
+
+    @Override
+    protected void onMeasure(int widthMeasureSpec, int heightMeasureSpec) {
+
+        int width = getDefaultSize(getSuggestedMinimumWidth(), widthMeasureSpec);
+
+        if(!mLayoutValid || width != mLayoutWidth) {
+            computeLayout(width);
+        }
+
+        setMeasuredDimension(width, resolveSize(mLayoutHeight, heightMeasureSpec));
+    }
+
+    @Override
+    public void onRtlPropertiesChanged(int layoutDirection) {
+        super.onRtlPropertiesChanged(layoutDirection);
+
+        //Called while measuring, which rebuilds the layout
+        mLayoutValid = false;
+    }
+
+    @Override
+    protected void onDraw(Canvas canvas) {
+
+        if(!mLayoutValid) {
+            return;
+        }
+
+        if(mTitleLayout != null) {
+            drawLayout(canvas, mTitleLayout, getPaddingLeft() + mContentPadding,
+                    getPaddingTop() + mContentPadding);
+        }
+
+        for (int i = 0; i < mBarRects.length; i++) {
+            mBarPaint.setColor(mBars.get(i).getColor());
+            canvas.drawRect(mBarRects[i], mBarPaint);
+        }
+
+        for (int i = 0; i < mKeyLayouts.length; i++) {
+
+            float left = mLegendLefts[i];
+            Drawable drawable = mLegendDrawables.get(i);
+            int keyHeight = mKeyLayouts[i].getHeight();
+            int drawableWidth = 0;
+
+            if(drawable != null) {
+
+                drawableWidth = drawable.getIntrinsicWidth();
+                int drawableHeight = drawable.getIntrinsicHeight();
+                int top = (int) (mLegendTop + (keyHeight - drawableHeight) / 2f);
+
+                //The drawable and the subkey margin are on the start side of the column
+                int drawableLeft = (int) (mRtl ? left + mColumnWidth - drawableWidth : left);
+                drawable.setBounds(drawableLeft, top, drawableLeft + drawableWidth, top + drawableHeight);
+                drawable.draw(canvas);
+                drawableWidth += mLegendPadding;
+            }
+
+            drawLayout(canvas, mKeyLayouts[i], mRtl ? left : left + drawableWidth, mLegendTop);
+            drawLayout(canvas, mSubKeyLayouts[i], mRtl ? left : left + mLegendSubKeyMargin,
+                    mLegendTop + keyHeight);
+        }
+    }
+
+    private void computeLayout(int width) {
+
+        int left = getPaddingLeft() + mContentPadding;
+        int contentWidth = Math.max(0, width - left - getPaddingRight() - mContentPadding);
+        mRtl = ViewCompat.getLayoutDirection(this) == ViewCompat.LAYOUT_DIRECTION_RTL;
+        float top = getPaddingTop() + mContentPadding;
+
+        mTitleLayout = null;
+
+        if(mTitleVisible) {
+
+            //Single line title ellipsized at the end like the title TextView
+            CharSequence title = mTitleText == null ? "" : TextUtils.ellipsize(mTitleText, mTitlePaint,
+                    contentWidth, TextUtils.TruncateAt.END);
+            mTitleLayout = createLayout(title, mTitlePaint, contentWidth);
+            top += mTitleLayout.getHeight();
+        }
+
+        top += mSectionMargin;
+        float barTop = top;
+
+        int count = mBars.size();
+
+        if(mBarRects.length != count) {
+            mBarRects = new RectF[count];
+            mKeyLayouts = new StaticLayout[count];
+            mSubKeyLayouts = new StaticLayout[count];
+            mLegendLefts = new float[count];
+        }
+
+        //Weights of the original layout sum to 100. Bars start at the right in RTL
+        float barStart = mRtl ? left + contentWidth : left;
+
+        for (int i = 0; i < count; i++) {
+
+            float barWidth = contentWidth * mBars.get(i).getPercentage() / 100f;
+
+            if(mBarRects[i] == null) {
+                mBarRects[i] = new RectF();
+            }
+
+            if(mRtl) {
+                mBarRects[i].set(barStart - barWidth, barTop, barStart, barTop + mBarHeight);
+                barStart -= barWidth;
+            }else {
+                mBarRects[i].set(barStart, barTop, barStart + barWidth, barTop + mBarHeight);
+                barStart += barWidth;
+            }
+        }
+
+        top += mBarHeight + mSectionMargin;
+        mLegendTop = top;
+
+        float legendHeight = 0;
+
+        if(count > 0) {
+
+            //Every legend column gets the same integer share of the weight sum
+            int columnWidth = (int) (contentWidth * (100 / count) / 100f);
+            mColumnWidth = columnWidth;
+
+            for (int i = 0; i < count; i++) {
+
+                StorageGraphBar bar = mBars.get(i);
+                Drawable drawable = mLegendDrawables.get(i);
+                int drawableWidth = drawable != null ? drawable.getIntrinsicWidth() + mLegendPadding : 0;
+
+                mLegendLefts[i] = mRtl ? left + contentWidth - (i + 1) * columnWidth : left + i * columnWidth;
+                mKeyLayouts[i] = createLayout(bar.getLegendTitle(), mLegendPaint,
+                        Math.max(0, columnWidth - drawableWidth));
+                mSubKeyLayouts[i] = createLayout(bar.getLegendSubtitle(), mLegendPaint,
+                        Math.max(0, columnWidth - mLegendSubKeyMargin));
+
+                int keyHeight = mKeyLayouts[i].getHeight();
+
+                if(drawable != null) {
+                    keyHeight = Math.max(keyHeight, drawable.getIntrinsicHeight());
+                }
+
+                legendHeight = Math.max(legendHeight, keyHeight + mSubKeyLayouts[i].getHeight());
+            }
+        }
+
+        mLayoutHeight = (int) Math.ceil(top + legendHeight) + mContentPadding + getPaddingBottom();
+        mLayoutWidth = width;
+        mLayoutValid = true;
+    }
+
+    private void invalidateLayout() {
+        mLayoutValid = false;
+        requestLayout();
+        invalidate();
+    }
+
+    private Drawable createLegendDrawable(@ColorInt int color) {
+
+        return TintedDrawableCache.getDrawable(getContext(),mLegendDrawable,color);
+    }
+
+    private static StaticLayout createLayout(@Nullable CharSequence text, TextPaint paint, int width) {
+        return new StaticLayout(text == null ? "" : text, paint, width,
+                Layout.Alignment.ALIGN_NORMAL, 1, 0, true);
+    }
+
+    private static void drawLayout(Canvas canvas, Layout layout, float left, float top) {
+        int saveCount = canvas.save();
+        canvas.translate(left, top);
+        layout.draw(canvas);
+        canvas.restoreToCount(saveCount);
+    }
+
+    private static void setTypeface(Paint paint, @Nullable Typeface typeFace, int style) {
+
+        Typeface typeface = style != Typeface.NORMAL ? Typeface.create(typeFace, style) : typeFace;
+        paint.setTypeface(typeface);
+
+        //Emulate the parts of the style the typeface does not provide like TextView does
+        int missingStyle = typeface != null ? style & ~typeface.getStyle() : style;
+        paint.setFakeBoldText((missingStyle & Typeface.BOLD) != 0);
+        paint.setTextSkewX((missingStyle & Typeface.ITALIC) != 0 ? -0.25f : 0);
+    }
+
+    private int dpToPixels(float dp) {
+        return (int) (dp * mDensity + 0.5f);
+    }
+
+    private float spToPixels(float sp) {
+        return TypedValue.applyDimension(TypedValue.COMPLEX_UNIT_SP, sp, getResources().getDisplayMetrics());
+    }
+}
@@ -1,5 +1,8 @@
 package com.tonyodev.storagegrapher.widget;
 
+import android.animation.Animator;
+import android.animation.AnimatorListenerAdapter;
+import android.animation.ValueAnimator;
 import android.content.Context;
 import android.content.res.TypedArray;
 import android.graphics.Typeface;
@@ -8,9 +11,11 @@ import android.support.annotation.ColorInt;
 import android.support.annotation.ColorRes;
 import android.support.annotation.DimenRes;
 import android.support.annotation.DrawableRes;
+import android.support.annotation.NonNull;
 import android.support.annotation.Nullable;
 import android.support.v4.content.ContextCompat;
-import android.support.v4.graphics.drawable.DrawableCompat;
+import android.support.v4.view.ViewCompat;
+import android.support.v4.widget.TextViewCompat;
 import android.util.AttributeSet;
 import android.view.LayoutInflater;
 import android.view.View;
@@ -22,9 +27,7 @@ import com.tonyodev.storagegrapher.R;
 import com.tonyodev.storagegrapher.StorageGraphBar;
 
 import java.util.ArrayList;
-import java.util.LinkedList;
 import java.util.List;
-import java.util.Queue;
 
 /**
  * Created by tonyofrancis on 4/21/17.
@@ -34,25 +37,80 @@ import java.util.Queue;
  */
 public class StorageGraphView extends FrameLayout {
 
-    private static final int VIEW_RECYCLE_LIMIT = 4;
-    private static final Queue<View> mBarViewPool = new LinkedList<>();
-    private static final Queue<View> mLegendViewPool = new LinkedList<>();
+    public static final long DEFAULT_ANIMATION_DURATION = 300;
 
     private final TextView mTitle;
     private final LinearLayout mGraph;
     private final LinearLayout mLegend;
 
-    @DrawableRes
-    private int mLegendDrawable = -1;
-    @DimenRes
-    private int mLegendPadding = -1;
-    @ColorInt
-    private int mLegendTextColor = -1;
-    @DimenRes
-    private int mLegendTextSizeRes = -1;
-    private float mLegendTextSize = -1;
-    private Typeface mLegendTypeFace = null;
-    private int mLegendTypeFaceStyle = Typeface.NORMAL;
+    private LegendStyle mLegendStyle = LegendStyle.DEFAULT;
+
+    //Style of the plotted legend views. Restyled by the next update when it differs
+    private LegendStyle mAppliedLegendStyle = LegendStyle.DEFAULT;
+
+    private StorageGraphViewPool mViewPool = new StorageGraphViewPool();
+
+    //Bars currently plotted. Child i of the graph and legend shows bar i
+    private final List<StorageGraphBar> mBars = new ArrayList<>();
+
+    private long mAnimationDuration = DEFAULT_ANIMATION_DURATION;
+    private ValueAnimator mAnimator;
+
+    //Bar weights at the start and end of the running animation
+    private float[] mFromWeights = new float[0];
+    private float[] mToWeights = new float[0];
+    private int mAnimatedBarCount;
+    private boolean mAnimatingWeights;
+
+    //Legend subtitles of the running animation. Animatable when the value changed
+    private LegendValueInterpolator[] mValueInterpolators = new LegendValueInterpolator[0];
+
+    //Allocation free. Writes the weights and legend values, then lays out only the graph
+    private final ValueAnimator.AnimatorUpdateListener mWeightUpdater = new ValueAnimator.AnimatorUpdateListener() {
+        @Override
+        public void onAnimationUpdate(ValueAnimator animation) {
+
+            float fraction = animation.getAnimatedFraction();
+
+            for (int x = 0; x < mAnimatedBarCount; x++) {
+
+                LegendValueInterpolator interpolator = mValueInterpolators[x];
+
+                if(interpolator.isAnimatable()) {
+                    interpolator.update(fraction);
+                    TextView legendSubKeyView = (TextView) mLegend.getChildAt(x).findViewById(R.id.legend_subkey);
+                    legendSubKeyView.setText(interpolator.getBuffer(), 0, interpolator.getLength());
+                }
+
+                if(mAnimatingWeights) {
+                    LinearLayout.LayoutParams layoutParams = (LinearLayout.LayoutParams) mGraph.getChildAt(x).getLayoutParams();
+                    layoutParams.weight = mFromWeights[x] + (mToWeights[x] - mFromWeights[x]) * fraction;
+                }
+            }
+
+            if(mAnimatingWeights) {
+                layoutGraph();
+            }
+        }
+    };
+
+    //Shows the exact subtitles once the animation finishes or is ended on detach
+    private final AnimatorListenerAdapter mValueFinisher = new AnimatorListenerAdapter() {
+        @Override
+        public void onAnimationEnd(Animator animation) {
+
+            for (int x = 0; x < mAnimatedBarCount; x++) {
+
+                LegendValueInterpolator interpolator = mValueInterpolators[x];
+
+                if(interpolator.isAnimatable()) {
+                    interpolator.reset();
+                    TextView legendSubKeyView = (TextView) mLegend.getChildAt(x).findViewById(R.id.legend_subkey);
+                    legendSubKeyView.setText(mBars.get(x).getLegendSubtitle());
+                }
+            }
+        }
+    };
 
     public StorageGraphView(Context context) {
         this(context,null);
@@ -103,14 +161,15 @@ public class StorageGraphView extends FrameLayout {
                 mTitle.setText(titleText);
 
 
-                mLegendDrawable = styledAttributes.getResourceId(R.styleable.StorageGraphView_legendDrawable,-1);
+                int legendDrawable = styledAttributes.getResourceId(R.styleable.StorageGraphView_legendDrawable,-1);
 
-                if(mLegendDrawable == -1) {
-                    mLegendDrawable = R.drawable.small_circle;
+                if(legendDrawable != -1) {
+                    mLegendStyle = mLegendStyle.withDrawable(legendDrawable);
                 }
 
-                mLegendTextSize = styledAttributes.getDimension(R.styleable.StorageGraphView_legendTextSize,-1);
-                mLegendTextColor = styledAttributes.getColor(R.styleable.StorageGraphView_legendTextColor,-1);
+                mLegendStyle = mLegendStyle
+                        .withTextSize(styledAttributes.getDimension(R.styleable.StorageGraphView_legendTextSize,-1))
+                        .withTextColor(styledAttributes.getColor(R.styleable.StorageGraphView_legendTextColor,-1));
             }
         }catch (Exception e) {
             e.printStackTrace();
@@ -200,7 +259,7 @@ public class StorageGraphView extends FrameLayout {
      * @param drawable drawable resource
      * */
     public void setLegendDrawable(@DrawableRes int drawable) {
-        this.mLegendDrawable = drawable;
+        this.mLegendStyle = mLegendStyle.withDrawable(drawable);
     }
 
     /**
@@ -209,7 +268,8 @@ public class StorageGraphView extends FrameLayout {
      * @param padding resource dimension
      * */
     public void setLegendDrawablePadding(@DimenRes int padding) {
-        this.mLegendPadding = padding;
+        this.mLegendStyle = mLegendStyle.withDrawablePadding(
+                (int) getContext().getResources().getDimension(padding));
     }
 
     /**
@@ -218,7 +278,7 @@ public class StorageGraphView extends FrameLayout {
      * @param color resource color
      * */
     public void setLegendTextColor(@ColorRes int color) {
-        this.mLegendTextColor = ContextCompat.getColor(getContext(),color);
+        this.mLegendStyle = mLegendStyle.withTextColor(ContextCompat.getColor(getContext(),color));
     }
 
     /**
@@ -227,7 +287,7 @@ public class StorageGraphView extends FrameLayout {
      * @param size resource dimension
      * */
     public void setLegendTextSize(@DimenRes int size) {
-        this.mLegendTextSizeRes = size;
+        this.mLegendStyle = mLegendStyle.withTextSize(getContext().getResources().getDimension(size));
     }
 
     /**
@@ -236,8 +296,7 @@ public class StorageGraphView extends FrameLayout {
      * @param typeFace typeface
      * */
     public void setLegendTypeFace(@Nullable Typeface typeFace) {
-        this.mLegendTypeFace = typeFace;
-        this.mLegendTypeFaceStyle = Typeface.NORMAL;
+        this.mLegendStyle = mLegendStyle.withTypeface(typeFace,Typeface.NORMAL);
     }
 
     /**
@@ -247,8 +306,52 @@ public class StorageGraphView extends FrameLayout {
      * @param style  style
      * */
     public void setLegendTypeFace(@Nullable Typeface typeFace,int style) {
-        this.mLegendTypeFace = typeFace;
-        this.mLegendTypeFaceStyle = style;
+        this.mLegendStyle = mLegendStyle.withTypeface(typeFace,style);
+    }
+
+    /**
+     * Sets how long bars take to grow or shrink to their new size when
+     * {@link #setBars(StorageGraphBar...)} changes the plotted values.
+     *
+     * @param duration duration in milliseconds. 0 disables animations
+     * */
+    public void setAnimationDuration(long duration) {
+
+        if(duration < 0) {
+            throw new IllegalArgumentException("Duration cannot be negative");
+        }
+
+        this.mAnimationDuration = duration;
+    }
+
+    /**
+     * @return animation duration in milliseconds
+     * */
+    public long getAnimationDuration() {
+        return mAnimationDuration;
+    }
+
+    /**
+     * Sets the pool the bar and legend views are recycled through.
+     * Graphs in the same window can share a pool.
+     *
+     * @param viewPool view pool
+     * */
+    public void setViewPool(@NonNull StorageGraphViewPool viewPool) {
+
+        if(viewPool == null) {
+            throw new NullPointerException("View pool cannot be null");
+        }
+
+        this.mViewPool = viewPool;
+    }
+
+    /**
+     * @return the pool the bar and legend views are recycled through
+     * */
+    @NonNull
+    public StorageGraphViewPool getViewPool() {
+        return mViewPool;
     }
 
     /**
@@ -263,15 +366,144 @@ public class StorageGraphView extends FrameLayout {
             return;
         }
 
-        List<View> legendViewList = new ArrayList<>(getLegendViews());
-        mLegend.removeAllViews();
+        List<StorageGraphBar> barList = new ArrayList<>(mBars.size() + bars.length);
+        barList.addAll(mBars);
+        addNonNullBars(barList, bars);
+        updateBars(barList);
+    }
+
+    /**
+     * Replaces the bars of the graph. Only the bars that differ from the
+     * plotted bars are updated. Their views are changed in place and the
+     * graph is laid out at most once. Bars that changed size animate to
+     * their new size while the graph is attached to a window. Plotted
+     * legends are restyled if a legend style setter was called since.
+     *
+     * @param bars StorageGraphBar items
+     * */
+    public void setBars(StorageGraphBar... bars) {
+
+        List<StorageGraphBar> barList = new ArrayList<>(bars == null ? 0 : bars.length);
+
+        if(bars != null) {
+            addNonNullBars(barList, bars);
+        }
+
+        updateBars(barList);
+    }
+
+    private static void addNonNullBars(List<StorageGraphBar> barList, StorageGraphBar[] bars) {
 
         for (StorageGraphBar bar : bars) {
 
-            if(bar == null) {
-                continue;
+            if(bar != null) {
+                barList.add(bar);
+            }
+        }
+    }
+
+    private void updateBars(List<StorageGraphBar> bars) {
+
+        int oldCount = mBars.size();
+        int newCount = bars.size();
+        int commonCount = Math.min(oldCount, newCount);
+        boolean weightsChanged = false;
+        boolean animateWeights = false;
+        boolean animateValues = false;
+        boolean animate = mAnimationDuration > 0 && ViewCompat.isAttachedToWindow(this);
+        boolean restyle = mAppliedLegendStyle != mLegendStyle;
+
+        //A running animation stops at its current weights and values and continues from there
+        stopAnimation();
+
+        if(animate && mFromWeights.length < commonCount) {
+            mFromWeights = new float[commonCount];
+            mToWeights = new float[commonCount];
+        }
+
+        if(animate && mValueInterpolators.length < commonCount) {
+
+            LegendValueInterpolator[] interpolators = new LegendValueInterpolator[commonCount];
+            System.arraycopy(mValueInterpolators, 0, interpolators, 0, mValueInterpolators.length);
+
+            for (int x = mValueInterpolators.length; x < commonCount; x++) {
+                interpolators[x] = new LegendValueInterpolator();
             }
 
+            mValueInterpolators = interpolators;
+        }
+
+        for (int x = 0; x < commonCount; x++) {
+
+            StorageGraphBar oldBar = mBars.get(x);
+            StorageGraphBar bar = bars.get(x);
+            View barView = mGraph.getChildAt(x);
+            View legendView = mLegend.getChildAt(x);
+            LinearLayout.LayoutParams layoutParams = (LinearLayout.LayoutParams) barView.getLayoutParams();
+
+            if(animate) {
+                mFromWeights[x] = layoutParams.weight;
+                mToWeights[x] = bar.getPercentage();
+                animateWeights |= layoutParams.weight != bar.getPercentage();
+            }else if(layoutParams.weight != bar.getPercentage()) {
+                //Changed in place. The graph is laid out once below
+                layoutParams.weight = bar.getPercentage();
+                weightsChanged = true;
+            }
+
+            if(restyle) {
+                styleLegendView(legendView);
+                setLegendDrawable(legendView, bar.getColor());
+            }
+
+            int changes = StorageGraphBarDiff.getChanges(oldBar, bar);
+            boolean subtitleChanged = (changes & StorageGraphBarDiff.SUBTITLE) != 0;
+            boolean valueInterrupted = x < mValueInterpolators.length && mValueInterpolators[x].isAnimatable();
+
+            if(subtitleChanged || valueInterrupted) {
+
+                TextView legendSubKeyView = (TextView) legendView.findViewById(R.id.legend_subkey);
+
+                //Interpolated from the value shown, which may be a frame of the stopped animation
+                if(animate && subtitleChanged && mValueInterpolators[x].set(
+                        legendSubKeyView.getText().toString(), bar.getLegendSubtitle())) {
+                    animateValues = true;
+                }else {
+
+                    if(valueInterrupted) {
+                        mValueInterpolators[x].reset();
+                    }
+
+                    legendSubKeyView.setText(bar.getLegendSubtitle());
+                }
+            }
+
+            if((changes & StorageGraphBarDiff.COLOR) != 0) {
+                barView.setBackgroundColor(bar.getColor());
+                setLegendDrawable(legendView, bar.getColor());
+            }
+
+            if((changes & StorageGraphBarDiff.TITLE) != 0) {
+                ((TextView) legendView.findViewById(R.id.legend_key)).setText(bar.getLegendTitle());
+            }
+        }
+
+        if(oldCount > newCount) {
+
+            for (int x = newCount; x < oldCount; x++) {
+                mViewPool.releaseBarView(mGraph.getChildAt(x));
+                mViewPool.releaseLegendView(mLegend.getChildAt(x));
+            }
+
+            mGraph.removeViews(newCount, oldCount - newCount);
+            mLegend.removeViews(newCount, oldCount - newCount);
+        }
+
+        int legendWeight = newCount > 0 ? 100 / newCount : 0;
+
+        for (int x = oldCount; x < newCount; x++) {
+
+            StorageGraphBar bar = bars.get(x);
             View barView = getBarView();
             View legendView = getLegendView();
 
@@ -279,36 +511,85 @@ public class StorageGraphView extends FrameLayout {
             formatLegendView(legendView, bar);
 
             mGraph.addView(barView);
-            legendViewList.add(legendView);
+            mLegend.addView(legendView,new LinearLayout.LayoutParams(0,
+                    LinearLayout.LayoutParams.WRAP_CONTENT,
+                    legendWeight));
         }
-        addViewsToLegend(legendViewList);
-    }
 
-    private List<View> getLegendViews() {
+        if(oldCount != newCount) {
 
-        int count = mLegend.getChildCount();
-        List<View> keysViewList = new ArrayList<>(count);
+            //Legend items share the width equally
+            for (int x = 0; x < commonCount; x++) {
+                ((LinearLayout.LayoutParams) mLegend.getChildAt(x).getLayoutParams()).weight = legendWeight;
+            }
 
-        for (int x = 0; x < count; x++) {
-            keysViewList.add(mLegend.getChildAt(x));
+            weightsChanged = true;
+        }
+
+        mBars.clear();
+        mBars.addAll(bars);
+        mAppliedLegendStyle = mLegendStyle;
+
+        if(animateWeights || animateValues) {
+            startAnimation(commonCount, animateWeights);
+        }
+
+        if(weightsChanged) {
+            mGraph.requestLayout();
+        }
+    }
+
+    private void startAnimation(int barCount, boolean animateWeights) {
+
+        if(mAnimator == null) {
+            mAnimator = ValueAnimator.ofFloat(0f, 1f);
+            mAnimator.addUpdateListener(mWeightUpdater);
+            mAnimator.addListener(mValueFinisher);
         }
 
-        return keysViewList;
+        mAnimatedBarCount = barCount;
+        mAnimatingWeights = animateWeights;
+        mAnimator.setDuration(mAnimationDuration);
+        mAnimator.start();
     }
 
-    private void addViewsToLegend(List<View> viewList) {
+    private void stopAnimation() {
 
-        if(viewList.size() == 0) {
+        //Cleared first so the cancel leaves the weights and values at their current frame
+        mAnimatedBarCount = 0;
+        mAnimatingWeights = false;
+
+        if(mAnimator != null) {
+            mAnimator.cancel();
+        }
+    }
+
+    /**
+     * Weights only change the graph, so it is measured and laid out again
+     * at its current size instead of requesting a layout of the whole
+     * hierarchy every frame.
+     * */
+    private void layoutGraph() {
+
+        //Not laid out yet or already waiting for a full layout pass
+        if(mGraph.getWidth() == 0 || mGraph.isLayoutRequested()) {
+            mGraph.requestLayout();
             return;
         }
 
-        int weight = 100 / viewList.size();
+        mGraph.forceLayout();
+        mGraph.measure(MeasureSpec.makeMeasureSpec(mGraph.getWidth(), MeasureSpec.EXACTLY),
+                MeasureSpec.makeMeasureSpec(mGraph.getHeight(), MeasureSpec.EXACTLY));
+        mGraph.layout(mGraph.getLeft(), mGraph.getTop(), mGraph.getRight(), mGraph.getBottom());
+    }
 
-        for (View keyView : viewList) {
+    @Override
+    protected void onDetachedFromWindow() {
+        super.onDetachedFromWindow();
 
-            mLegend.addView(keyView,new LinearLayout.LayoutParams(0,
-                    LinearLayout.LayoutParams.WRAP_CONTENT,
-                    weight));
+        //Jump to the final weights and values
+        if(mAnimator != null) {
+            mAnimator.end();
         }
     }
 
@@ -328,39 +609,67 @@ public class StorageGraphView extends FrameLayout {
         legendKeyView.setText(bar.getLegendTitle());
         legendSubKeyView.setText(bar.getLegendSubtitle());
 
-        Drawable drawable = ContextCompat.getDrawable(getContext(),mLegendDrawable);
-        drawable = tintDrawable(drawable,bar.getColor());
-        legendKeyView.setCompoundDrawablesWithIntrinsicBounds(drawable,null,null,null);
+        setLegendDrawable(legendView, bar.getColor());
+        styleLegendView(legendView);
+    }
 
-        if(mLegendTypeFace != null) {
-            legendKeyView.setTypeface(mLegendTypeFace,mLegendTypeFaceStyle);
-            legendSubKeyView.setTypeface(mLegendTypeFace,mLegendTypeFaceStyle);
+    private void styleLegendView(View legendView) {
+
+        //Resolved when the style was set
+        LegendStyle style = mLegendStyle;
+
+        //Pooled legend views may already have the style
+        if(legendView.getTag(R.id.legend_subkey) == style) {
+            return;
         }
 
-        if(mLegendTextSizeRes != -1) {
-            float size = getContext().getResources().getDimension(mLegendTextSizeRes);
-            legendKeyView.setTextSize(size);
-            legendSubKeyView.setTextSize(size);
-        }else if(mLegendTextSize != -1) {
-            legendKeyView.setTextSize(mLegendTextSize);
-            legendSubKeyView.setTextSize(mLegendTextSize);
+        TextView legendKeyView = (TextView) legendView.findViewById(R.id.legend_key);
+        TextView legendSubKeyView = (TextView) legendView.findViewById(R.id.legend_subkey);
+
+        if(style.typeface != null) {
+            legendKeyView.setTypeface(style.typeface,style.typefaceStyle);
+            legendSubKeyView.setTypeface(style.typeface,style.typefaceStyle);
+        }
+
+        if(style.textSize != -1) {
+            legendKeyView.setTextSize(style.textSize);
+            legendSubKeyView.setTextSize(style.textSize);
         }
 
-        if(mLegendTextColor != -1) {
-            legendKeyView.setTextColor(mLegendTextColor);
-            legendSubKeyView.setTextColor(mLegendTextColor);
+        if(style.textColor != -1) {
+            legendKeyView.setTextColor(style.textColor);
+            legendSubKeyView.setTextColor(style.textColor);
         }
 
-        if(mLegendPadding != -1) {
-            int padding = (int) getContext().getResources().getDimension(mLegendPadding);
-            legendKeyView.setCompoundDrawablePadding(padding);
+        if(style.drawablePadding != -1) {
+            legendKeyView.setCompoundDrawablePadding(style.drawablePadding);
         }
+
+        legendView.setTag(R.id.legend_subkey,style);
+    }
+
+    private void setLegendDrawable(View legendView,@ColorInt int color) {
+
+        TextView legendKeyView = (TextView) legendView.findViewById(R.id.legend_key);
+        long key = TintedDrawableCache.getKey(mLegendStyle.drawable,color);
+        Object currentKey = legendKeyView.getTag(R.id.legend_key);
+
+        //Pooled legend views often already show the drawable
+        if(currentKey instanceof Long && (Long) currentKey == key) {
+            return;
+        }
+
+        Drawable drawable = TintedDrawableCache.getDrawable(getContext(),mLegendStyle.drawable,color);
+        TextViewCompat.setCompoundDrawablesRelativeWithIntrinsicBounds(legendKeyView,drawable,null,null,null);
+        legendKeyView.setTag(R.id.legend_key,key);
     }
 
     private View getBarView() {
 
-        if(!mBarViewPool.isEmpty()) {
-            return mBarViewPool.remove();
+        View view = mViewPool.acquireBarView(getContext());
+
+        if(view != null) {
+            return view;
         }
 
         return new View(getContext());
@@ -368,8 +677,10 @@ public class StorageGraphView extends FrameLayout {
 
     private View getLegendView() {
 
-        if(!mLegendViewPool.isEmpty()) {
-            return mLegendViewPool.remove();
+        View view = mViewPool.acquireLegendView(getContext());
+
+        if(view != null) {
+            return view;
         }
 
         return LayoutInflater.from(getContext()).inflate(R.layout.storage_graph_legend, mLegend,false);
@@ -380,32 +691,30 @@ public class StorageGraphView extends FrameLayout {
      * */
     public void clear() {
 
+        stopAnimation();
+
+        for (LegendValueInterpolator interpolator : mValueInterpolators) {
+            interpolator.reset();
+        }
+
         recyclerViews();
         mGraph.removeAllViews();
         mLegend.removeAllViews();
+        mBars.clear();
     }
 
     private void recyclerViews() {
 
-        int index = mGraph.getChildCount();
-        int counter = 0;
+        int count = mGraph.getChildCount();
 
-        while (mBarViewPool.size() < VIEW_RECYCLE_LIMIT && counter < index) {
-            mBarViewPool.add(mGraph.getChildAt(counter++));
+        for (int x = 0; x < count; x++) {
+            mViewPool.releaseBarView(mGraph.getChildAt(x));
         }
 
-        index = mLegend.getChildCount();
-        counter = 0;
+        count = mLegend.getChildCount();
 
-        while (mLegendViewPool.size() < VIEW_RECYCLE_LIMIT && counter < index) {
-            mLegendViewPool.add(mLegend.getChildAt(counter++));
+        for (int x = 0; x < count; x++) {
+            mViewPool.releaseLegendView(mLegend.getChildAt(x));
         }
     }
-
-    private Drawable tintDrawable(Drawable drawable,@ColorInt int color) {
-
-        Drawable wrappedDrawable = DrawableCompat.wrap(drawable);
-        DrawableCompat.setTint(wrappedDrawable,color);
-        return wrappedDrawable;
-    }
 }
@@ -0,0 +1,135 @@
+package com.tonyodev.storagegrapher.widget;
+
+import android.content.Context;
+import android.support.annotation.Nullable;
+import android.view.View;
+
+import java.lang.ref.WeakReference;
+import java.util.ArrayDeque;
+
+/**
+ * Bounded pool of the bar and legend views of {@link StorageGraphView}.
+ * Every StorageGraphView has its own pool. Graphs in the same window can
+ * share one pool with {@link StorageGraphView#setViewPool(StorageGraphViewPool)}.
+ *
+ * Pooled views are held strongly. Views released by a graph are detached,
+ * so a weak reference would not survive the next garbage collection. A
+ * pool only holds views of one Context: releasing a view of another
+ * Context drops the views of the previous one, so a pool shared between
+ * screens keeps at most one screen alive. Views are only reused by a graph
+ * with the same Context so they are not shown with the theme of another
+ * screen. Call {@link #clear()} when a shared pool outlives its screen.
+ */
+public final class StorageGraphViewPool {
+
+    public static final int DEFAULT_CAPACITY = 4;
+
+    private final int capacity;
+    private final ArrayDeque<View> barViews = new ArrayDeque<>();
+    private final ArrayDeque<View> legendViews = new ArrayDeque<>();
+
+    //Context of the pooled views. Weak so an emptied pool does not keep it alive
+    private WeakReference<Context> context;
+
+    private long hits;
+    private long misses;
+
+    public StorageGraphViewPool() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    /**
+     * @param capacity number of bar views and number of legend views kept
+     * */
+    public StorageGraphViewPool(int capacity) {
+
+        if(capacity < 0) {
+            throw new IllegalArgumentException("Capacity cannot be negative");
+        }
+
+        this.capacity = capacity;
+    }
+
+    /**
+     * @return  number of bar views and number of legend views kept
+     * */
+    public int getCapacity() {
+        return capacity;
+    }
+
+    /**
+     * @return  number of views served from the pool
+     * */
+    public synchronized long getHitCount() {
+        return hits;
+    }
+
+    /**
+     * @return  number of views that had to be created
+     * */
+    public synchronized long getMissCount() {
+        return misses;
+    }
+
+    /**
+     * Drops every pooled view
+     * */
+    public synchronized void clear() {
+        barViews.clear();
+        legendViews.clear();
+        context = null;
+    }
+
+    @Nullable
+    synchronized View acquireBarView(Context context) {
+        return acquire(barViews, context);
+    }
+
+    @Nullable
+    synchronized View acquireLegendView(Context context) {
+        return acquire(legendViews, context);
+    }
+
+    synchronized void releaseBarView(View view) {
+        release(barViews, view);
+    }
+
+    synchronized void releaseLegendView(View view) {
+        release(legendViews, view);
+    }
+
+    private View acquire(ArrayDeque<View> pool, Context context) {
+
+        View view = isPoolContext(context) ? pool.pollLast() : null;
+
+        if(view == null) {
+            misses++;
+            return null;
+        }
+
+        hits++;
+        return view;
+    }
+
+    private void release(ArrayDeque<View> pool, View view) {
+
+        Context viewContext = view.getContext();
+
+        if(!isPoolContext(viewContext)) {
+            //Views of the previous Context would keep that screen alive
+            barViews.clear();
+            legendViews.clear();
+            context = new WeakReference<>(viewContext);
+        }
+
+        if(pool.size() >= capacity) {
+            return;
+        }
+
+        pool.addLast(view);
+    }
+
+    private boolean isPoolContext(Context context) {
+        return this.context != null && this.context.get() == context;
+    }
+}
@@ -0,0 +1,138 @@
+package com.tonyodev.storagegrapher.widget;
+
+import android.content.Context;
+import android.content.res.Configuration;
+import android.content.res.Resources;
+import android.graphics.drawable.Drawable;
+import android.support.annotation.ColorInt;
+import android.support.annotation.DrawableRes;
+import android.support.annotation.Nullable;
+import android.support.v4.content.ContextCompat;
+import android.support.v4.graphics.drawable.DrawableCompat;
+
+import java.lang.ref.WeakReference;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Bounded cache of tinted legend drawables shared by every graph. Entries
+ * hold the ConstantState of the tinted drawable, so a cached drawable is
+ * created without loading or tinting the resource again. The least
+ * recently used entry is dropped when the cache is full.
+ *
+ * A drawable depends on the density, night mode and theme it was loaded
+ * with, so entries are keyed by those along with the drawable resource
+ * and color. Screens with different themes share the cache without
+ * evicting each other. Themes are held weakly; entries of a theme that
+ * was collected no longer match and age out of the cache.
+ */
+final class TintedDrawableCache {
+
+    static final int CAPACITY = 32;
+
+    private static final Map<Key, Drawable.ConstantState> states =
+            new LinkedHashMap<Key, Drawable.ConstantState>(CAPACITY, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<Key, Drawable.ConstantState> eldest) {
+                    return size() > CAPACITY;
+                }
+            };
+
+    private TintedDrawableCache() {
+    }
+
+    /**
+     * @param context context used to load the drawable
+     * @param drawableRes drawable resource
+     * @param color tint color
+     * @return a new drawable tinted with the color or null if the resource has no drawable
+     * */
+    @Nullable
+    static Drawable getDrawable(Context context, @DrawableRes int drawableRes, @ColorInt int color) {
+
+        Resources resources = context.getResources();
+        Key key = new Key(context.getTheme(), resources.getDisplayMetrics().densityDpi,
+                resources.getConfiguration().uiMode & Configuration.UI_MODE_NIGHT_MASK,
+                getKey(drawableRes, color));
+        Drawable.ConstantState state;
+
+        synchronized (states) {
+            state = states.get(key);
+        }
+
+        if(state != null) {
+            return state.newDrawable(resources);
+        }
+
+        Drawable drawable = ContextCompat.getDrawable(context, drawableRes);
+
+        if(drawable == null) {
+            return null;
+        }
+
+        //Mutated so the tint does not leak into other drawables of the resource
+        Drawable tintedDrawable = DrawableCompat.wrap(drawable.mutate());
+        DrawableCompat.setTint(tintedDrawable, color);
+        state = tintedDrawable.getConstantState();
+
+        //Drawables without a constant state cannot be shared
+        if(state != null) {
+
+            synchronized (states) {
+                states.put(key, state);
+            }
+        }
+
+        return tintedDrawable;
+    }
+
+    static long getKey(@DrawableRes int drawableRes, @ColorInt int color) {
+        return ((long) drawableRes << 32) | (color & 0xffffffffL);
+    }
+
+    //Configuration, theme and tinted resource of a cached drawable
+    private static final class Key {
+
+        private final WeakReference<Resources.Theme> theme;
+        private final int themeHash;
+        private final int densityDpi;
+        private final int nightMode;
+        private final long drawable;
+
+        Key(Resources.Theme theme, int densityDpi, int nightMode, long drawable) {
+            this.theme = new WeakReference<>(theme);
+            this.themeHash = System.identityHashCode(theme);
+            this.densityDpi = densityDpi;
+            this.nightMode = nightMode;
+            this.drawable = drawable;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+
+            if(this == o) {
+                return true;
+            }
+
+            if(!(o instanceof Key)) {
+                return false;
+            }
+
+            Key key = (Key) o;
+            Resources.Theme keyTheme = theme.get();
+
+            return drawable == key.drawable && densityDpi == key.densityDpi
+                    && nightMode == key.nightMode && keyTheme != null && keyTheme == key.theme.get();
+        }
+
+        @Override
+        public int hashCode() {
+
+            int result = themeHash;
+            result = 31 * result + densityDpi;
+            result = 31 * result + nightMode;
+            result = 31 * result + (int) (drawable ^ (drawable >>> 32));
+            return result;
+        }
+    }
+}
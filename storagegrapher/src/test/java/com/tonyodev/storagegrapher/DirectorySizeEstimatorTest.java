@@ -0,0 +1,164 @@
+package com.tonyodev.storagegrapher;
+
+import android.support.annotation.NonNull;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+
+import static org.junit.Assert.*;
+
+/**
+ * Estimates of a DirectorySizeEstimator over trees held by an
+ * InMemoryStorageBackend.
+ */
+public class DirectorySizeEstimatorTest {
+
+    private InMemoryStorageBackend backend;
+
+    @Before
+    public void setUp() {
+        backend = new InMemoryStorageBackend();
+        StorageBackend.setDefault(backend);
+    }
+
+    @After
+    public void tearDown() {
+        StorageBackend.setDefault(null);
+    }
+
+    @Test
+    public void uniformTree_isEstimatedByEveryProbe() {
+
+        //Every directory has the same fan out and files, so each probe sees the whole size
+        for (int i = 0; i < 3; i++) {
+            for (int j = 0; j < 3; j++) {
+                backend.addFile("/data/" + i + "/" + j + "/file.bin", 100);
+            }
+        }
+
+        //One probe stats the root, one listing per level and the entries of each
+        DirectorySizeEstimator estimator = new DirectorySizeEstimator(new File("/data"));
+        SizeEstimate estimate = estimator.refineByEntries(10);
+
+        assertFalse(estimate.isExact());
+        assertEquals(1, estimate.getSamples());
+        assertEquals(900, estimate.getBytes());
+    }
+
+    @Test
+    public void readTree_isExact() {
+
+        backend.addFile("/data/a.bin", 10);
+        backend.addFile("/data/app/b.bin", 20);
+        backend.addFile("/data/app/lib/c.bin", 30);
+        backend.addFile("/data/media/d.bin", 40);
+
+        DirectorySizeEstimator estimator = new DirectorySizeEstimator(new File("/data"));
+        SizeEstimate estimate = estimator.refineByEntries(Long.MAX_VALUE);
+
+        assertTrue(estimate.isExact());
+        assertEquals(100, estimate.getBytes());
+        assertEquals(100, estimate.getLowerBytes());
+        assertEquals(100, estimate.getUpperBytes());
+        assertEquals(Storage.getDirectorySize(new File("/data")), estimate.getBytes());
+    }
+
+    @Test
+    public void fullCache_keepsEstimating() {
+
+        for (int i = 0; i < 10; i++) {
+            backend.addFile("/data/" + i + "/file.bin", 100);
+        }
+
+        DirectorySizeEstimator estimator = new DirectorySizeEstimator(new File("/data"), 2);
+        SizeEstimate estimate = estimator.refineByEntries(200);
+
+        assertFalse(estimate.isExact());
+        assertEquals(1000, estimate.getBytes());
+        assertTrue(estimate.getLowerBytes() <= estimate.getBytes());
+        assertTrue(estimate.getUpperBytes() >= estimate.getBytes());
+    }
+
+    @Test(timeout = 5000)
+    public void fullCache_endsUnboundedRefine() {
+
+        for (int i = 0; i < 10; i++) {
+            backend.addFile("/data/" + i + "/file.bin", 100);
+        }
+
+        SizeEstimate estimate = new DirectorySizeEstimator(new File("/data"), 2).refine(Long.MAX_VALUE);
+
+        assertFalse(estimate.isExact());
+        assertEquals(1000, estimate.getBytes());
+    }
+
+    @Test(timeout = 5000)
+    public void unreadableDirectory_countsAsEmpty() {
+
+        backend.addFile("/data/a.bin", 10);
+        backend.addFile("/data/locked/b.bin", 20);
+
+        final int[] lockedReads = new int[1];
+
+        StorageBackend.setDefault(new StorageBackend() {
+            @Override
+            protected boolean readEntry(@NonNull String path, @NonNull EntryStat stat) {
+
+                //Listed by its parent but cannot be read itself
+                if(path.equals("/data/locked") && lockedReads[0]++ > 0) {
+                    stat.clear();
+                    return false;
+                }
+
+                return backend.readEntry(path, stat);
+            }
+
+            @Override
+            protected DirectoryEntries openDirectory(@NonNull String directory) {
+                return backend.openDirectory(directory);
+            }
+
+            @Override
+            protected boolean readVolume(@NonNull String path, @NonNull VolumeStat stat) {
+                return backend.readVolume(path, stat);
+            }
+        });
+
+        SizeEstimate estimate = new DirectorySizeEstimator(new File("/data")).refineByEntries(Long.MAX_VALUE);
+
+        assertTrue(estimate.isExact());
+        assertEquals(10, estimate.getBytes());
+    }
+
+    @Test
+    public void largeDirectory_isListedWithinTheBudget() {
+
+        for (int i = 0; i < 5000; i++) {
+            backend.addFile("/data/" + i + ".bin", 10);
+        }
+
+        DirectorySizeEstimator estimator = new DirectorySizeEstimator(new File("/data"));
+        SizeEstimate estimate = estimator.refineByEntries(100);
+
+        assertFalse(estimate.isExact());
+        assertEquals(0, estimate.getSamples());
+
+        //Later refines continue the listing where it was cut off
+        while (!estimate.isExact()) {
+            estimate = estimator.refineByEntries(100);
+        }
+
+        assertEquals(50000, estimate.getBytes());
+    }
+
+    @Test
+    public void missingDirectory_estimatesZero() {
+
+        SizeEstimate estimate = new DirectorySizeEstimator(new File("/missing")).refineByEntries(10);
+
+        assertEquals(0, estimate.getBytes());
+    }
+}
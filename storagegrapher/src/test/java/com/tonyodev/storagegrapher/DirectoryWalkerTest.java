@@ -0,0 +1,117 @@
+package com.tonyodev.storagegrapher;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+
+import static org.junit.Assert.*;
+
+/**
+ * Directory walks on the local file system through the JVM backend.
+ */
+public class DirectoryWalkerTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void symbolicLinkRoot_isMeasuredAsTarget() throws Exception {
+
+        File directory = createTree(folder.newFolder("tree"));
+        File link = new File(folder.getRoot(), "link");
+        Files.createSymbolicLink(link.toPath(), directory.toPath());
+
+        long bytes = Storage.getDirectorySize(directory);
+
+        assertTrue(bytes > 3000);
+        assertEquals(bytes, Storage.getDirectorySize(link));
+        assertEquals(bytes, Storage.getDirectorySize(link, 4));
+        assertEquals(bytes, Storage.scanDirectory(link).getBytes());
+    }
+
+    @Test
+    public void symbolicLinkBelowRoot_isNotFollowed() throws Exception {
+
+        File directory = createTree(folder.newFolder("tree"));
+        File other = folder.newFolder("other");
+        createFile(new File(other, "large.bin"), 1024 * 1024);
+
+        long bytes = Storage.getDirectorySize(directory);
+        Files.createSymbolicLink(new File(directory, "link").toPath(), other.toPath());
+
+        assertTrue(Storage.getDirectorySize(directory) < bytes + 1024 * 1024);
+        assertEquals(Storage.getDirectorySize(directory), Storage.getDirectorySize(directory, 4));
+    }
+
+    @Test
+    public void walk_visitsEveryEntry() throws Exception {
+
+        File directory = createTree(folder.newFolder("tree"));
+        final int[] counts = new int[2];
+
+        long bytes = DirectoryWalker.walk(directory.getAbsolutePath(), new EntryStat(), new DirectoryWalker.Visitor() {
+            @Override
+            public int preVisitDirectory(String path, EntryStat stat) {
+                counts[0]++;
+                return DirectoryWalker.CONTINUE;
+            }
+
+            @Override
+            public int visitFile(String path, EntryStat stat) {
+                counts[1]++;
+                return DirectoryWalker.CONTINUE;
+            }
+
+            @Override
+            public void postVisitDirectory(String path, long bytes) {
+            }
+        });
+
+        assertEquals(3, counts[0]);
+        assertEquals(3, counts[1]);
+        assertEquals(Storage.getDirectorySize(directory), bytes);
+    }
+
+    @Test
+    public void missingFile_hasNoSize() {
+        assertEquals(0, Storage.getDirectorySize(new File(folder.getRoot(), "missing")));
+    }
+
+    @Test
+    public void nullFile_hasNoSize() {
+        assertEquals(0, Storage.getDirectorySize(null));
+        assertEquals(0, Storage.getDirectorySize(null, 4));
+    }
+
+    //tree/a.bin, tree/sub/b.bin, tree/sub/deeper/c.bin
+    static File createTree(File root) throws IOException {
+
+        File sub = new File(root, "sub");
+        File deeper = new File(sub, "deeper");
+
+        if(!deeper.mkdirs()) {
+            throw new IOException("Cannot create " + deeper);
+        }
+
+        createFile(new File(root, "a.bin"), 1000);
+        createFile(new File(sub, "b.bin"), 1000);
+        createFile(new File(deeper, "c.bin"), 1000);
+        return root;
+    }
+
+    static void createFile(File file, long size) throws IOException {
+
+        RandomAccessFile randomAccessFile = new RandomAccessFile(file, "rw");
+
+        try {
+            randomAccessFile.setLength(size);
+        } finally {
+            randomAccessFile.close();
+        }
+    }
+}
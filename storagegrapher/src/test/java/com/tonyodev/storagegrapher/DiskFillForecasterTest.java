@@ -0,0 +1,89 @@
+package com.tonyodev.storagegrapher;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Fill rate and projections of a DiskFillForecaster over recorded histories.
+ */
+public class DiskFillForecasterTest {
+
+    private static final long START = 1500000000000L;
+
+    @Test
+    public void forecaster_isSeededFromExistingHistory() {
+
+        FreeSpaceSampler sampler = new FreeSpaceSampler(1000);
+        VolumeHistory history = sampler.addVolume("/data");
+
+        //Filling at 50 bytes per second
+        for (int i = 0; i < 60; i++) {
+            history.record(START + i * 1000L, 100000 - 50 * i, 50 * i);
+        }
+
+        DiskFillForecaster forecaster = new DiskFillForecaster(sampler);
+        long last = START + 59 * 1000L;
+
+        assertEquals(50, forecaster.getFillRateBytesPerSecond("/data"), 0.001);
+        assertEquals(97050 / 50 * 1000L, forecaster.getTimeToFullMillis("/data", last), 10);
+        assertEquals(97050 - 500, forecaster.getProjectedFreeBytes("/data", last + 10000));
+        assertTrue(forecaster.willFit("/data", 90000, last + 60000));
+        assertFalse(forecaster.willFit("/data", 97000, last + 60000));
+        forecaster.release();
+    }
+
+    @Test
+    public void seeding_usesOlderTiersBeyondTheRawSamples() {
+
+        FreeSpaceSampler sampler = new FreeSpaceSampler(1000, 10, 100, 10);
+        VolumeHistory history = sampler.addVolume("/data");
+
+        //30 minutes at one sample per 10 seconds. Raw samples only cover the last 100 seconds
+        for (int i = 0; i < 180; i++) {
+            history.record(START + i * 10000L, 1000000 - 100 * i, 100 * i);
+        }
+
+        assertEquals(10, history.getSampleCount(VolumeHistory.TIER_RAW));
+        assertEquals(29, history.getSampleCount(VolumeHistory.TIER_MINUTE));
+
+        DiskFillForecaster forecaster = new DiskFillForecaster(sampler, 60 * 60 * 1000L);
+
+        assertEquals(10, forecaster.getFillRateBytesPerSecond("/data"), 0.01);
+        forecaster.release();
+    }
+
+    @Test
+    public void projections_followTheFittedLine() {
+
+        FreeSpaceSampler sampler = new FreeSpaceSampler(1000);
+        VolumeHistory history = sampler.addVolume("/data");
+
+        //Alternating noise of 1000 bytes around a line filling at 50 bytes per second
+        for (int i = 0; i < 61; i++) {
+            long noise = i % 2 == 0 ? 1000 : -1000;
+            history.record(START + i * 1000L, 100000 - 50 * i + noise, 50 * i);
+        }
+
+        DiskFillForecaster forecaster = new DiskFillForecaster(sampler);
+        long last = START + 60 * 1000L;
+        long line = 100000 - 50 * 60;
+
+        //The last sample sits 1000 bytes above the line
+        assertEquals(line + 1000, history.getLastFreeBytes());
+        assertEquals(line, forecaster.getProjectedFreeBytes("/data", last), 100);
+        assertEquals(line / 50 * 1000L, forecaster.getTimeToFullMillis("/data", last), 3000);
+        forecaster.release();
+    }
+
+    @Test
+    public void unknownVolume_hasNoForecast() {
+
+        DiskFillForecaster forecaster = new DiskFillForecaster(new FreeSpaceSampler(1000));
+
+        assertEquals(0, forecaster.getFillRateBytesPerSecond("/data"), 0);
+        assertEquals(DiskFillForecaster.UNKNOWN, forecaster.getTimeToFullMillis("/data"));
+        assertEquals(DiskFillForecaster.UNKNOWN, forecaster.getProjectedFreeBytes("/data", START));
+        assertFalse(forecaster.willFit("/data", 1, START));
+    }
+}
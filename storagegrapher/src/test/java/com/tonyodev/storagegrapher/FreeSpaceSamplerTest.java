@@ -0,0 +1,92 @@
+package com.tonyodev.storagegrapher;
+
+import android.support.annotation.NonNull;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * Sampling, listeners and volume references of a FreeSpaceSampler.
+ */
+public class FreeSpaceSamplerTest {
+
+    private FreeSpaceSampler sampler;
+
+    @Before
+    public void setUp() {
+        InMemoryStorageBackend backend = new InMemoryStorageBackend();
+        backend.setVolume("/data", 1000, 400);
+        StorageBackend.setDefault(backend);
+        sampler = new FreeSpaceSampler(1000);
+    }
+
+    @After
+    public void tearDown() {
+        StorageBackend.setDefault(null);
+    }
+
+    @Test
+    public void throwingListener_doesNotStopTheOthers() {
+
+        final List<Long> samples = new ArrayList<>();
+
+        sampler.addOnSampleListener(new FreeSpaceSampler.OnSampleListener() {
+            @Override
+            public void onSample(@NonNull String path, long timestamp, long freeBytes, long usedBytes) {
+                throw new IllegalStateException();
+            }
+        });
+
+        sampler.addOnSampleListener(new FreeSpaceSampler.OnSampleListener() {
+            @Override
+            public void onSample(@NonNull String path, long timestamp, long freeBytes, long usedBytes) {
+                samples.add(freeBytes);
+            }
+        });
+
+        sampler.addVolume("/data");
+        sampler.sample();
+        sampler.sample();
+
+        assertEquals(2, samples.size());
+        assertEquals(400, (long) samples.get(0));
+        assertEquals(2, sampler.getHistory("/data").getSampleCount(VolumeHistory.TIER_RAW));
+    }
+
+    @Test
+    public void volume_isRemovedWithItsLastReference() {
+
+        final List<String> removed = new ArrayList<>();
+
+        sampler.addOnVolumeRemovedListener(new FreeSpaceSampler.OnVolumeRemovedListener() {
+            @Override
+            public void onVolumeRemoved(@NonNull String path) {
+                removed.add(path);
+            }
+        });
+
+        VolumeHistory history = sampler.addVolume("/data");
+        assertSame(history, sampler.addVolume("/data"));
+
+        sampler.releaseVolume("/data");
+        assertSame(history, sampler.getHistory("/data"));
+        assertTrue(removed.isEmpty());
+
+        sampler.releaseVolume("/data");
+        assertNull(sampler.getHistory("/data"));
+        assertEquals(1, removed.size());
+
+        //Removing ignores references
+        sampler.addVolume("/data");
+        sampler.addVolume("/data");
+        sampler.removeVolume("/data");
+        assertNull(sampler.getHistory("/data"));
+        assertEquals(2, removed.size());
+    }
+}
@@ -0,0 +1,148 @@
+package com.tonyodev.storagegrapher;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+
+import static org.junit.Assert.*;
+
+/**
+ * Walks and volume reads against a tree held by an InMemoryStorageBackend.
+ */
+public class InMemoryStorageBackendTest {
+
+    private InMemoryStorageBackend backend;
+
+    @Before
+    public void setUp() {
+        backend = new InMemoryStorageBackend();
+        StorageBackend.setDefault(backend);
+    }
+
+    @After
+    public void tearDown() {
+        StorageBackend.setDefault(null);
+    }
+
+    @Test
+    public void walkFromRoot_findsChildrenOfTheRoot() {
+
+        backend.addFile("/a.bin", 10);
+        backend.addFile("/data/b.bin", 20);
+        backend.addFile("/data/app/c.bin", 30);
+
+        final int[] counts = new int[2];
+
+        long bytes = DirectoryWalker.walk("/", new EntryStat(), new DirectoryWalker.Visitor() {
+            @Override
+            public int preVisitDirectory(String path, EntryStat stat) {
+                counts[0]++;
+                return DirectoryWalker.CONTINUE;
+            }
+
+            @Override
+            public int visitFile(String path, EntryStat stat) {
+                counts[1]++;
+                return DirectoryWalker.CONTINUE;
+            }
+
+            @Override
+            public void postVisitDirectory(String path, long bytes) {
+            }
+        });
+
+        assertEquals(60, bytes);
+        assertEquals(3, counts[0]);
+        assertEquals(3, counts[1]);
+    }
+
+    @Test
+    public void paths_areNormalized() {
+
+        backend.addFile("/data//app/c.bin", 30);
+        EntryStat stat = new EntryStat();
+
+        assertTrue(stat.read("//data"));
+        assertEquals(EntryStat.TYPE_DIRECTORY, stat.type);
+        assertTrue(stat.read("/data/app/"));
+        assertTrue(stat.read("/data/app//c.bin"));
+        assertEquals(EntryStat.TYPE_FILE, stat.type);
+        assertEquals(30, stat.size);
+    }
+
+    @Test
+    public void remove_dropsTheSubtree() {
+
+        backend.addFile("/data/app/c.bin", 30);
+        backend.addFile("/sdcard/d.bin", 40);
+        backend.remove("/data");
+
+        EntryStat stat = new EntryStat();
+
+        assertFalse(stat.read("/data/app/c.bin"));
+        assertEquals(EntryStat.TYPE_NONE, stat.type);
+        assertEquals(40, Storage.getDirectorySize(new File("/")));
+    }
+
+    @Test
+    public void readVolume_usesTheLongestMatchingVolume() {
+
+        backend.setVolume("/", 1000, 400);
+        backend.setVolume("/sdcard", 200, 50);
+
+        VolumeStat stat = new VolumeStat();
+
+        assertTrue(stat.read("/data/app"));
+        assertEquals(1000, stat.totalBytes);
+        assertEquals(600, stat.getUsedBytes());
+        assertTrue(stat.read("/sdcard/Download"));
+        assertEquals(200, stat.totalBytes);
+        assertEquals(50, stat.freeBytes);
+
+        backend.removeVolume("/");
+        assertFalse(stat.read("/data"));
+    }
+
+    @Test
+    public void parallelWalk_matchesSerialWalk() {
+
+        for (int i = 0; i < 20; i++) {
+            for (int j = 0; j < 20; j++) {
+                backend.addFile("/data/" + i + "/" + j + "/file.bin", i * 20 + j);
+            }
+        }
+
+        File root = new File("/data");
+        long bytes = Storage.getDirectorySize(root);
+
+        assertEquals(79800, bytes);
+
+        //Later calls reuse the pool of the same parallelism
+        for (int i = 0; i < 3; i++) {
+            assertEquals(bytes, Storage.getDirectorySize(root, 4));
+        }
+    }
+
+    @Test
+    public void analyzeWithMaxCount_keepsEveryEntry() {
+
+        backend.addFile("/data/a.bin", 10);
+        backend.addFile("/data/app/b.bin", 30);
+        backend.addFile("/data/app/c.bin", 20);
+
+        DirectoryReport report = Storage.analyzeDirectory(new File("/data"), Integer.MAX_VALUE);
+
+        assertEquals(3, report.getLargestFiles().size());
+        assertEquals("/data/app/b.bin", report.getLargestFiles().get(0).getPath());
+        assertEquals(1, report.getLargestDirectories().size());
+        assertEquals(50, report.getLargestDirectories().get(0).getBytes());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void fileOverDirectory_isRejected() {
+        backend.addDirectory("/data");
+        backend.addFile("/data", 10);
+    }
+}
@@ -0,0 +1,61 @@
+package com.tonyodev.storagegrapher;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Adding, growing and clearing a LongPairSet.
+ */
+public class LongPairSetTest {
+
+    @Test
+    public void add_rejectsDuplicatePairs() {
+
+        LongPairSet set = new LongPairSet();
+
+        assertTrue(set.add(1, 2));
+        assertTrue(set.add(2, 1));
+        assertFalse(set.add(1, 2));
+        assertEquals(2, set.size());
+    }
+
+    @Test
+    public void secondValueZero_isStoredAsOne() {
+
+        LongPairSet set = new LongPairSet();
+
+        assertTrue(set.add(5, 0));
+        assertFalse(set.add(5, 1));
+        assertTrue(set.add(0, 2));
+        assertEquals(2, set.size());
+    }
+
+    @Test
+    public void grow_keepsEveryPair() {
+
+        LongPairSet set = new LongPairSet(1);
+
+        for (long i = 1; i <= 10000; i++) {
+            assertTrue(set.add(i % 7, i));
+        }
+
+        assertEquals(10000, set.size());
+
+        for (long i = 1; i <= 10000; i++) {
+            assertFalse(set.add(i % 7, i));
+        }
+    }
+
+    @Test
+    public void clear_removesEveryPair() {
+
+        LongPairSet set = new LongPairSet();
+        set.add(1, 2);
+        set.add(3, 4);
+        set.clear();
+
+        assertEquals(0, set.size());
+        assertTrue(set.add(1, 2));
+    }
+}
@@ -0,0 +1,143 @@
+package com.tonyodev.storagegrapher;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+
+import static org.junit.Assert.*;
+
+/**
+ * Appending, reopening, rotating and compacting a SnapshotLog on disk.
+ */
+public class SnapshotLogTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void records_surviveReopen() {
+
+        SnapshotLog log = new SnapshotLog(folder.getRoot(), "history");
+        assertTrue(log.append(volume("/data", 100, 40), 1000));
+        assertTrue(log.append(new ScanResult("/data/app", 500, 7, 2, 9, 18), 2000));
+        log.close();
+
+        SnapshotLog.Reader reader = new SnapshotLog(folder.getRoot(), "history").openReader();
+
+        assertEquals(2, reader.getRecordCount());
+        assertEquals(SnapshotLog.TYPE_VOLUME, reader.getType(0));
+        assertEquals(1000, reader.getTimestamp(0));
+        assertEquals("/data", reader.getPath(0));
+        assertEquals(100, reader.getTotalBytes(0));
+        assertEquals(40, reader.getFreeBytes(0));
+        assertEquals(60, reader.getUsedBytes(0));
+        assertEquals(SnapshotLog.TYPE_SCAN, reader.getType(1));
+        assertEquals("/data/app", reader.getPath(1));
+        assertEquals(500, reader.getScanBytes(1));
+        assertEquals(7, reader.getFileCount(1));
+        assertEquals(2, reader.getDirectoryCount(1));
+        assertEquals(9, reader.getStatCalls(1));
+    }
+
+    @Test
+    public void partiallyWrittenPath_isCutOffBeforeAppending() throws IOException {
+
+        SnapshotLog log = new SnapshotLog(folder.getRoot(), "history");
+        log.append(volume("/data", 100, 40), 1000);
+        log.close();
+
+        //Length prefix of a 20 byte path followed by only 3 bytes of it
+        FileOutputStream output = new FileOutputStream(new File(folder.getRoot(), "history.paths"), true);
+        output.write(new byte[]{0, 20, '/', 's', 'd'});
+        output.close();
+
+        log = new SnapshotLog(folder.getRoot(), "history");
+        log.append(volume("/sdcard", 200, 50), 2000);
+        log.append(volume("/storage/0000-0000", 300, 60), 3000);
+        log.close();
+
+        SnapshotLog.Reader reader = new SnapshotLog(folder.getRoot(), "history").openReader();
+
+        assertEquals(3, reader.getRecordCount());
+        assertEquals("/data", reader.getPath(0));
+        assertEquals("/sdcard", reader.getPath(1));
+        assertEquals("/storage/0000-0000", reader.getPath(2));
+    }
+
+    @Test
+    public void rotation_keepsTheNewestSegments() {
+
+        SnapshotLog log = new SnapshotLog(folder.getRoot(), "history", 4, 2);
+
+        for (int i = 0; i < 20; i++) {
+            log.append(volume("/data", 100, i), i);
+        }
+
+        SnapshotLog.Reader reader = log.openReader();
+
+        assertEquals(8, reader.getRecordCount());
+        assertEquals(12, reader.getTimestamp(0));
+        assertEquals(19, reader.getTimestamp(7));
+        assertEquals(2, reader.findFirst(14));
+        assertEquals(8, reader.findFirst(100));
+    }
+
+    @Test
+    public void compact_keepsOneRecordPerInterval() {
+
+        SnapshotLog log = new SnapshotLog(folder.getRoot(), "history", 10, 10);
+
+        for (int i = 0; i < 30; i++) {
+            log.append(volume("/data", 100, i), i * 1000);
+        }
+
+        //Closed segments hold 0s to 19s. Records before 15s are kept one per 5s
+        assertEquals(12, log.compact(15000, 5000));
+
+        SnapshotLog.Reader reader = log.openReader();
+
+        assertEquals(18, reader.getRecordCount());
+        assertEquals(0, reader.getTimestamp(0));
+        assertEquals(5000, reader.getTimestamp(1));
+        assertEquals(10000, reader.getTimestamp(2));
+        assertEquals(15000, reader.getTimestamp(3));
+    }
+
+    @Test
+    public void compact_dropsUnreferencedPathsAndKeepsIds() {
+
+        SnapshotLog log = new SnapshotLog(folder.getRoot(), "history", 2, 2);
+        File pathsFile = new File(folder.getRoot(), "history.paths");
+
+        log.append(volume("/a/long/path/that/is/rotated/out", 100, 1), 1);
+        log.append(volume("/a/long/path/that/is/rotated/out", 100, 2), 2);
+
+        for (int i = 3; i <= 6; i++) {
+            log.append(volume("/data", 100, i), i);
+        }
+
+        long tableLength = pathsFile.length();
+        log.compact(0, 1000);
+
+        assertTrue(pathsFile.length() < tableLength);
+
+        log.append(volume("/sdcard", 100, 7), 7);
+        log.close();
+
+        SnapshotLog.Reader reader = new SnapshotLog(folder.getRoot(), "history").openReader();
+
+        //The segment of the first path was deleted by rotation
+        assertEquals(3, reader.getRecordCount());
+        assertEquals("/data", reader.getPath(0));
+        assertEquals("/data", reader.getPath(1));
+        assertEquals("/sdcard", reader.getPath(2));
+    }
+
+    private static StorageVolume volume(String path, long total, long free) {
+        return new StorageVolume(path, free, total - free, total, 0, 0);
+    }
+}
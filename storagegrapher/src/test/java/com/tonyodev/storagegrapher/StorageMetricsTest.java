@@ -0,0 +1,86 @@
+package com.tonyodev.storagegrapher;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+
+import static org.junit.Assert.*;
+
+/**
+ * Scans reported to StorageMetrics by the directory size paths.
+ */
+public class StorageMetricsTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private InMemoryStorageBackend backend;
+    private StorageMetrics.Registry registry;
+
+    @Before
+    public void setUp() {
+        backend = new InMemoryStorageBackend();
+        StorageBackend.setDefault(backend);
+        registry = new StorageMetrics.Registry();
+        StorageMetrics.setListener(registry);
+
+        backend.addFile("/data/a.bin", 10);
+        backend.addFile("/data/app/b.bin", 20);
+        backend.addFile("/data/app/lib/c.bin", 30);
+    }
+
+    @After
+    public void tearDown() {
+        StorageMetrics.setListener(null);
+        StorageBackend.setDefault(null);
+    }
+
+    @Test
+    public void serialScan_isReported() {
+
+        long bytes = Storage.getDirectorySize(new File("/data"));
+
+        assertScan(bytes);
+    }
+
+    @Test
+    public void parallelScan_isReported() {
+
+        long bytes = Storage.getDirectorySize(new File("/data"), 4);
+
+        assertScan(bytes);
+    }
+
+    @Test
+    public void indexScan_isReported() throws Exception {
+
+        DirectorySizeIndex index = new DirectorySizeIndex(folder.newFile("index"));
+        long bytes = index.getDirectorySize(new File("/data"));
+
+        assertScan(bytes);
+    }
+
+    @Test
+    public void estimatorRefine_reportsTheEntriesItRead() {
+
+        DirectorySizeEstimator estimator = new DirectorySizeEstimator(new File("/data"));
+        long bytes = estimator.refineByEntries(Long.MAX_VALUE).getBytes();
+
+        assertScan(bytes);
+
+        //Refines served from the cache read nothing and are not reported
+        estimator.refineByEntries(Long.MAX_VALUE);
+        assertEquals(1, registry.getScanCount());
+    }
+
+    private void assertScan(long bytes) {
+        assertEquals(1, registry.getScanCount());
+        assertEquals(6, registry.getEntriesVisited());
+        assertEquals(bytes, registry.getBytesSummed());
+        assertTrue(registry.getStatCalls() >= 6);
+    }
+}
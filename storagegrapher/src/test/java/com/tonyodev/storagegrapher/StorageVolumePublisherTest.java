@@ -0,0 +1,242 @@
+package com.tonyodev.storagegrapher;
+
+import android.support.annotation.NonNull;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executor;
+
+import static org.junit.Assert.*;
+
+/**
+ * Snapshot delivery of a StorageVolumePublisher fed by samples of an
+ * InMemoryStorageBackend volume.
+ */
+public class StorageVolumePublisherTest {
+
+    private InMemoryStorageBackend backend;
+    private FreeSpaceSampler sampler;
+    private StorageVolumePublisher publisher;
+
+    @Before
+    public void setUp() {
+        backend = new InMemoryStorageBackend();
+        backend.setVolume("/data", 1000, 500);
+        StorageBackend.setDefault(backend);
+        sampler = new FreeSpaceSampler(1000);
+        publisher = new StorageVolumePublisher(sampler, 10);
+    }
+
+    @After
+    public void tearDown() {
+        publisher.close();
+        StorageBackend.setDefault(null);
+    }
+
+    @Test
+    public void snapshots_respectDemandAndMinimumDelta() {
+
+        RecordingSubscriber subscriber = new RecordingSubscriber(1);
+        publisher.subscribe("/data", subscriber);
+
+        sampler.sample();
+        assertEquals(1, subscriber.volumes.size());
+
+        //No demand. Only the latest snapshot is kept
+        setFreeBytes(400);
+        sampler.sample();
+        setFreeBytes(300);
+        sampler.sample();
+        assertEquals(1, subscriber.volumes.size());
+
+        subscriber.subscription.request(5);
+        assertEquals(2, subscriber.volumes.size());
+        assertEquals(300, subscriber.volumes.get(1).getFreeSpace());
+
+        //Moved less than the minimum delta
+        setFreeBytes(295);
+        sampler.sample();
+        assertEquals(2, subscriber.volumes.size());
+    }
+
+    @Test
+    public void signals_areDeliveredWithoutLocks() {
+
+        final List<Boolean> lockHeld = new ArrayList<>();
+
+        publisher.subscribe("/data", new RecordingSubscriber(Long.MAX_VALUE) {
+            @Override
+            public void onNext(@NonNull StorageVolume volume) {
+                lockHeld.add(Thread.holdsLock(subscription) || Thread.holdsLock(publisher));
+            }
+        });
+
+        sampler.sample();
+
+        assertEquals(1, lockHeld.size());
+        assertFalse(lockHeld.get(0));
+    }
+
+    @Test
+    public void signals_runOnTheExecutor() {
+
+        final List<Runnable> tasks = new ArrayList<>();
+        RecordingSubscriber subscriber = new RecordingSubscriber(Long.MAX_VALUE);
+
+        publisher.subscribe("/data", subscriber, new Executor() {
+            @Override
+            public void execute(@NonNull Runnable command) {
+                tasks.add(command);
+            }
+        });
+
+        assertNull(subscriber.subscription);
+        sampler.sample();
+        setFreeBytes(100);
+        sampler.sample();
+        assertEquals(1, tasks.size());
+
+        tasks.remove(0).run();
+
+        //Both snapshots arrived before the drain ran. Only the latest is delivered
+        assertNotNull(subscriber.subscription);
+        assertEquals(1, subscriber.volumes.size());
+        assertEquals(100, subscriber.volumes.get(0).getFreeSpace());
+    }
+
+    @Test
+    public void removedVolume_completesSubscribers() {
+
+        //Another owner samples the volume, so the publisher shares it
+        sampler.addVolume("/data");
+        RecordingSubscriber subscriber = new RecordingSubscriber(Long.MAX_VALUE);
+        publisher.subscribe("/data", subscriber);
+
+        sampler.removeVolume("/data");
+
+        assertTrue(subscriber.completed);
+        assertNull(sampler.getHistory("/data"));
+    }
+
+    @Test
+    public void sharedVolume_outlivesOnePublisher() {
+
+        StorageVolumePublisher other = new StorageVolumePublisher(sampler, 10);
+        RecordingSubscriber subscriber = new RecordingSubscriber(Long.MAX_VALUE);
+        RecordingSubscriber otherSubscriber = new RecordingSubscriber(Long.MAX_VALUE);
+
+        publisher.subscribe("/data", subscriber);
+        other.subscribe("/data", otherSubscriber);
+        subscriber.subscription.cancel();
+        publisher.close();
+
+        sampler.sample();
+
+        assertFalse(otherSubscriber.completed);
+        assertEquals(1, otherSubscriber.volumes.size());
+
+        other.close();
+        assertNull(sampler.getHistory("/data"));
+    }
+
+    @Test
+    public void volumes_areReleasedWithoutPublisherLocks() {
+
+        final StorageVolumePublisher other = new StorageVolumePublisher(sampler, 10);
+        final List<Boolean> lockHeld = new ArrayList<>();
+
+        sampler.addOnVolumeRemovedListener(new FreeSpaceSampler.OnVolumeRemovedListener() {
+            @Override
+            public void onVolumeRemoved(@NonNull String path) {
+                lockHeld.add(Thread.holdsLock(publisher) || Thread.holdsLock(other));
+            }
+        });
+
+        RecordingSubscriber subscriber = new RecordingSubscriber(1);
+        publisher.subscribe("/data", subscriber);
+        other.subscribe("/sdcard", new RecordingSubscriber(1));
+
+        subscriber.subscription.cancel();
+        other.close();
+
+        assertEquals(2, lockHeld.size());
+        assertFalse(lockHeld.get(0));
+        assertFalse(lockHeld.get(1));
+    }
+
+    @Test
+    public void throwingSubscriber_isCancelled() {
+
+        RecordingSubscriber subscriber = new RecordingSubscriber(Long.MAX_VALUE) {
+            @Override
+            public void onNext(@NonNull StorageVolume volume) {
+                throw new IllegalStateException();
+            }
+        };
+
+        publisher.subscribe("/data", subscriber);
+        sampler.sample();
+
+        assertNull(sampler.getHistory("/data"));
+
+        //The path can be subscribed again
+        RecordingSubscriber next = new RecordingSubscriber(Long.MAX_VALUE);
+        publisher.subscribe("/data", next);
+        sampler.sample();
+
+        assertEquals(1, next.volumes.size());
+    }
+
+    @Test
+    public void invalidRequest_signalsError() {
+
+        RecordingSubscriber subscriber = new RecordingSubscriber(1);
+        publisher.subscribe("/data", subscriber);
+        subscriber.subscription.request(0);
+
+        assertTrue(subscriber.error instanceof IllegalArgumentException);
+        assertNull(sampler.getHistory("/data"));
+    }
+
+    private void setFreeBytes(long freeBytes) {
+        backend.setVolume("/data", 1000, freeBytes);
+    }
+
+    private static class RecordingSubscriber implements StorageVolumePublisher.Subscriber {
+
+        final List<StorageVolume> volumes = new ArrayList<>();
+        final long initialRequest;
+        StorageVolumePublisher.Subscription subscription;
+        Throwable error;
+        boolean completed;
+
+        RecordingSubscriber(long initialRequest) {
+            this.initialRequest = initialRequest;
+        }
+
+        @Override
+        public void onSubscribe(@NonNull StorageVolumePublisher.Subscription subscription) {
+            this.subscription = subscription;
+            subscription.request(initialRequest);
+        }
+
+        @Override
+        public void onNext(@NonNull StorageVolume volume) {
+            volumes.add(volume);
+        }
+
+        @Override
+        public void onError(@NonNull Throwable throwable) {
+            error = throwable;
+        }
+
+        @Override
+        public void onComplete() {
+            completed = true;
+        }
+    }
+}
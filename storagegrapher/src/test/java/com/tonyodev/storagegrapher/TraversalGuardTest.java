@@ -0,0 +1,79 @@
+package com.tonyodev.storagegrapher;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Cycle, file system and hard link checks of a TraversalGuard.
+ */
+public class TraversalGuardTest {
+
+    @Test
+    public void directory_isOnlyEnteredOnce() {
+
+        TraversalGuard guard = new TraversalGuard(false, false);
+
+        assertEquals(DirectoryWalker.CONTINUE, guard.preVisitDirectory("/data", directory(1, 10)));
+        assertEquals(DirectoryWalker.CONTINUE, guard.preVisitDirectory("/data/app", directory(1, 11)));
+
+        //Bind mount or link back to an entered directory
+        assertEquals(DirectoryWalker.SKIP_SUBTREE, guard.preVisitDirectory("/data/app/loop", directory(1, 10)));
+    }
+
+    @Test
+    public void sameFileSystem_skipsOtherDevices() {
+
+        TraversalGuard guard = new TraversalGuard(true, false);
+
+        assertEquals(DirectoryWalker.CONTINUE, guard.preVisitDirectory("/data", directory(1, 10)));
+        assertEquals(DirectoryWalker.SKIP_SUBTREE, guard.preVisitDirectory("/data/mnt", directory(2, 11)));
+
+        TraversalGuard crossing = new TraversalGuard(false, false);
+        crossing.preVisitDirectory("/data", directory(1, 10));
+
+        assertEquals(DirectoryWalker.CONTINUE, crossing.preVisitDirectory("/data/mnt", directory(2, 11)));
+    }
+
+    @Test
+    public void hardLinks_areCountedOnce() {
+
+        TraversalGuard guard = new TraversalGuard(false, true);
+
+        assertEquals(DirectoryWalker.CONTINUE, guard.visitFile("/data/a", file(1, 20, 2)));
+        assertEquals(DirectoryWalker.SKIP_SUBTREE, guard.visitFile("/data/b", file(1, 20, 2)));
+
+        //Single link files are never remembered
+        assertEquals(DirectoryWalker.CONTINUE, guard.visitFile("/data/c", file(1, 21, 1)));
+        assertEquals(DirectoryWalker.CONTINUE, guard.visitFile("/data/c", file(1, 21, 1)));
+
+        TraversalGuard counting = new TraversalGuard(false, false);
+        counting.visitFile("/data/a", file(1, 20, 2));
+
+        assertEquals(DirectoryWalker.CONTINUE, counting.visitFile("/data/b", file(1, 20, 2)));
+    }
+
+    @Test
+    public void missingInodes_fallBackToThePath() {
+
+        TraversalGuard guard = new TraversalGuard(true, true);
+
+        assertEquals(DirectoryWalker.CONTINUE, guard.preVisitDirectory("/data", directory(0, 0)));
+        assertEquals(DirectoryWalker.CONTINUE, guard.preVisitDirectory("/data/app", directory(0, 0)));
+        assertEquals(DirectoryWalker.SKIP_SUBTREE, guard.preVisitDirectory("/data/app", directory(0, 0)));
+        assertEquals(DirectoryWalker.CONTINUE, guard.visitFile("/data/a", file(0, 0, 2)));
+        assertEquals(DirectoryWalker.CONTINUE, guard.visitFile("/data/a", file(0, 0, 2)));
+    }
+
+    private static EntryStat directory(long device, long inode) {
+        EntryStat stat = new EntryStat();
+        stat.set(EntryStat.TYPE_DIRECTORY, 0, device, inode, 1, 0);
+        return stat;
+    }
+
+    private static EntryStat file(long device, long inode, long links) {
+        EntryStat stat = new EntryStat();
+        stat.set(EntryStat.TYPE_FILE, 10, device, inode, links, 0);
+        return stat;
+    }
+}
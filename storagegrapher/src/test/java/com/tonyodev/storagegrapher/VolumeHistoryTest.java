@@ -0,0 +1,106 @@
+package com.tonyodev.storagegrapher;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Ring buffers and averaged tiers of a VolumeHistory.
+ */
+public class VolumeHistoryTest {
+
+    private static final long MINUTE = 60 * 1000L;
+
+    @Test
+    public void rawTier_keepsTheNewestSamples() {
+
+        VolumeHistory history = new VolumeHistory("/data", 3, 10, 10);
+
+        for (int i = 1; i <= 5; i++) {
+            history.record(i * 1000L, 100 - i, i);
+        }
+
+        long[] timestamps = new long[3];
+        long[] free = new long[3];
+        long[] used = new long[3];
+
+        assertEquals(3, history.getSampleCount(VolumeHistory.TIER_RAW));
+        assertEquals(3, history.read(VolumeHistory.TIER_RAW, timestamps, free, used));
+        assertArrayEquals(new long[]{3000, 4000, 5000}, timestamps);
+        assertArrayEquals(new long[]{97, 96, 95}, free);
+        assertArrayEquals(new long[]{3, 4, 5}, used);
+        assertEquals(5000, history.getLastTimestamp());
+        assertEquals(95, history.getLastFreeBytes());
+        assertEquals(5, history.getLastUsedBytes());
+    }
+
+    @Test
+    public void shortArrays_receiveTheMostRecentSamples() {
+
+        VolumeHistory history = new VolumeHistory("/data", 10, 10, 10);
+
+        for (int i = 1; i <= 4; i++) {
+            history.record(i, i, i);
+        }
+
+        long[] timestamps = new long[2];
+
+        assertEquals(2, history.read(VolumeHistory.TIER_RAW, timestamps, new long[2], new long[2]));
+        assertArrayEquals(new long[]{3, 4}, timestamps);
+    }
+
+    @Test
+    public void minuteTier_averagesAtTheMeanSampleTime() {
+
+        VolumeHistory history = new VolumeHistory("/data", 10, 10, 10);
+
+        //Samples at 10s, 20s and 30s of the first minute, then one in the next minute
+        history.record(10000, 300, 30);
+        history.record(20000, 200, 20);
+        history.record(30000, 100, 10);
+        assertEquals(0, history.getSampleCount(VolumeHistory.TIER_MINUTE));
+
+        history.record(MINUTE, 0, 0);
+
+        long[] timestamps = new long[1];
+        long[] free = new long[1];
+        long[] used = new long[1];
+
+        assertEquals(1, history.read(VolumeHistory.TIER_MINUTE, timestamps, free, used));
+        assertEquals(20000, timestamps[0]);
+        assertEquals(200, free[0]);
+        assertEquals(20, used[0]);
+    }
+
+    @Test
+    public void hourTier_averagesMinuteBuckets() {
+
+        VolumeHistory history = new VolumeHistory("/data", 1, 100, 10);
+
+        //One sample per minute for two hours
+        for (int i = 0; i <= 120; i++) {
+            history.record(i * MINUTE, i, 0);
+        }
+
+        assertEquals(1, history.getSampleCount(VolumeHistory.TIER_HOUR));
+        assertEquals(100, history.getSampleCount(VolumeHistory.TIER_MINUTE));
+
+        long[] timestamps = new long[1];
+        long[] free = new long[1];
+
+        history.read(VolumeHistory.TIER_HOUR, timestamps, free, new long[1]);
+        assertEquals(59 * MINUTE / 2, timestamps[0]);
+        assertEquals(29, free[0]);
+    }
+
+    @Test
+    public void emptyHistory_hasNoLastSample() {
+
+        VolumeHistory history = new VolumeHistory("/data", 10, 10, 10);
+
+        assertEquals("/data", history.getPath());
+        assertEquals(10, history.getCapacity(VolumeHistory.TIER_HOUR));
+        assertEquals(0, history.getLastTimestamp());
+        assertEquals(0, history.getLastFreeBytes());
+    }
+}
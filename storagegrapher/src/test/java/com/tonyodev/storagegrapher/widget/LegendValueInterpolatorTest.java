@@ -0,0 +1,69 @@
+package com.tonyodev.storagegrapher.widget;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Frames written by a LegendValueInterpolator between two legend texts.
+ */
+public class LegendValueInterpolatorTest {
+
+    @Test
+    public void frames_interpolateTheValue() {
+
+        LegendValueInterpolator interpolator = new LegendValueInterpolator();
+
+        assertTrue(interpolator.set("1.50 GB", "9.5 GB"));
+
+        assertEquals("1.5 GB", frame(interpolator, 0));
+        assertEquals("5.5 GB", frame(interpolator, 0.5f));
+        assertEquals("9.5 GB", frame(interpolator, 1));
+    }
+
+    @Test
+    public void frames_keepTheTargetSeparatorAndPadDecimals() {
+
+        LegendValueInterpolator interpolator = new LegendValueInterpolator();
+
+        assertTrue(interpolator.set("Used 100,00 MB free", "Used 0,05 MB free"));
+
+        assertEquals("Used 100,00 MB free", frame(interpolator, 0));
+        assertEquals("Used 0,05 MB free", frame(interpolator, 1));
+        assertEquals("Used 90,00 MB free", frame(interpolator, 0.1f));
+    }
+
+    @Test
+    public void frames_reuseTheBuffer() {
+
+        LegendValueInterpolator interpolator = new LegendValueInterpolator();
+        interpolator.set("999 KB", "1 KB");
+        char[] buffer = interpolator.getBuffer();
+
+        for (int i = 0; i <= 60; i++) {
+            interpolator.update(i / 60f);
+            assertSame(buffer, interpolator.getBuffer());
+        }
+
+        assertEquals("1 KB", frame(interpolator, 1));
+    }
+
+    @Test
+    public void differentText_isNotAnimatable() {
+
+        LegendValueInterpolator interpolator = new LegendValueInterpolator();
+
+        assertFalse(interpolator.set("900 MB", "1.2 GB"));
+        assertFalse(interpolator.isAnimatable());
+        assertFalse(interpolator.set("Free", "Used"));
+        assertFalse(interpolator.set(null, "1 GB"));
+        assertFalse(interpolator.set("1,234.5 MB", "1,300.0 MB"));
+        assertTrue(interpolator.set("1 GB", "2 GB"));
+        assertTrue(interpolator.isAnimatable());
+    }
+
+    private static String frame(LegendValueInterpolator interpolator, float fraction) {
+        interpolator.update(fraction);
+        return new String(interpolator.getBuffer(), 0, interpolator.getLength());
+    }
+}
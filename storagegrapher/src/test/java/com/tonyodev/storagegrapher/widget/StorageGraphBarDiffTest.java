@@ -0,0 +1,42 @@
+package com.tonyodev.storagegrapher.widget;
+
+import com.tonyodev.storagegrapher.StorageGraphBar;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Changes found between a plotted bar and the bar replacing it.
+ */
+public class StorageGraphBarDiffTest {
+
+    @Test
+    public void sameData_hasNoChanges() {
+
+        StorageGraphBar bar = new StorageGraphBar(40, 0xFF0000, "Used", "4 GB");
+
+        assertEquals(StorageGraphBarDiff.NONE, StorageGraphBarDiff.getChanges(bar, bar));
+        assertEquals(StorageGraphBarDiff.NONE, StorageGraphBarDiff.getChanges(bar,
+                new StorageGraphBar(40, 0xFF0000, "Used", "4 GB")));
+
+        //Weights are compared against the views
+        assertEquals(StorageGraphBarDiff.NONE, StorageGraphBarDiff.getChanges(bar,
+                new StorageGraphBar(60, 0xFF0000, "Used", "4 GB")));
+    }
+
+    @Test
+    public void changedFields_areFlagged() {
+
+        StorageGraphBar bar = new StorageGraphBar(40, 0xFF0000, "Used", "4 GB");
+
+        assertEquals(StorageGraphBarDiff.COLOR, StorageGraphBarDiff.getChanges(bar,
+                new StorageGraphBar(40, 0x00FF00, "Used", "4 GB")));
+        assertEquals(StorageGraphBarDiff.TITLE | StorageGraphBarDiff.SUBTITLE, StorageGraphBarDiff.getChanges(bar,
+                new StorageGraphBar(40, 0xFF0000, "Free", "6 GB")));
+        assertEquals(StorageGraphBarDiff.TITLE | StorageGraphBarDiff.SUBTITLE, StorageGraphBarDiff.getChanges(bar,
+                new StorageGraphBar(40, 0xFF0000)));
+        assertEquals(StorageGraphBarDiff.NONE, StorageGraphBarDiff.getChanges(new StorageGraphBar(40, 0xFF0000),
+                new StorageGraphBar(40, 0xFF0000)));
+    }
+}